@@ -92,7 +92,7 @@ public final class BF {
     if (!process.execute()) return null;
     DisplayHandler displayHandler = new DisplayHandler(process);
     if (options != null && options.isShowOMEXML()) {
-      displayHandler.displayOMEXML();
+      displayHandler.displayOMEModel();
     }
     ImagePlusReader reader = new ImagePlusReader(process);
     ImagePlus[] imps = reader.openImagePlus();
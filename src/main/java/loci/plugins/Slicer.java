@@ -100,7 +100,11 @@ public class Slicer implements PlugInFilter {
     ImageStack[] newStacks = new ImageStack[stack.getSize() / slicesPerStack];
     for (int i=0; i<newStacks.length; i++) {
       newStacks[i] = makeStack(stack);
-      if (newStacks[i] == null) return null;
+      if (newStacks[i] == null) {
+        // release the virtual stacks created so far
+        for (int j=0; j<i; j++) close(newStacks[j]);
+        return null;
+      }
     }
 
     int stackZ = sliceZ ? sizeZ : 1;
@@ -121,7 +125,7 @@ public class Slicer implements PlugInFilter {
         int sliceNdx = FormatTools.getIndex(stackOrder, realSizeZ, realSizeC,
           realSizeT, slicesPerStack, sliceZ ? 0 : zct[0], sliceC ? 0 : zct[1],
           sliceT ? 0 : zct[2]);
-        planeIndexes[stackNdx][sliceNdx] = i;
+        planeIndexes[stackNdx][sliceNdx] = virtualStack.getPlaneIndex(i + 1);
       }
       else {
         newStacks[stackNdx].addSlice(label, stack.getProcessor(i + 1));
@@ -172,7 +176,9 @@ public class Slicer implements PlugInFilter {
         p.setOpenAsHyperStack(hyperstack);
       }
       if (imp.isComposite() && !sliceC) {
+        // the reordered copy no longer needs the virtual stack
         p = reorder(p, stackOrder, "XYCZT");
+        close(newStacks[i]);
         int mode = ((CompositeImage) imp).getMode();
         newImps[i] = new CompositeImage(p, mode);
       }
@@ -287,6 +293,11 @@ public class Slicer implements PlugInFilter {
     return Boolean.valueOf(Macro.getValue(arg, key, "false"));
   }
 
+  /** Releases the given stack's planes, if it is a virtual stack. */
+  private static void close(ImageStack stack) {
+    if (stack instanceof BFVirtualStack) ((BFVirtualStack) stack).close();
+  }
+
   /** Returns a new ImageStack using the given ImageStack as a template. */
   private ImageStack makeStack(ImageStack stack) {
     if (!(stack instanceof BFVirtualStack)) {
@@ -298,7 +309,10 @@ public class Slicer implements PlugInFilter {
     ImageProcessorReader reader = virtualStack.getReader();
 
     try {
-      return new BFVirtualStack(path, reader, false, false, false);
+      BFVirtualStack newStack = new BFVirtualStack(path, reader,
+        false, false, false, virtualStack.getCropRegion());
+      newStack.setPlaneTransforms(virtualStack.getPlaneTransforms());
+      return newStack;
     }
     catch (FormatException e) {
       WindowTools.reportException(e);
@@ -84,6 +84,7 @@ public class CellSensWidgets implements IFormatWidgets, ItemListener {
     if (box.equals(getWidgets()[0])) {
       Prefs.set(LociPrefs.PREF_CELLSENS_FAIL, box.isSelected());
     }
+    LociPrefs.resetReaderConfig();
   }
 
 }
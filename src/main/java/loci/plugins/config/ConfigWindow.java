@@ -93,7 +93,7 @@ public class ConfigWindow extends JFrame
   private JList formatsList;
   private JPanel formatInfo;
   private JTextField extensions, sliceLabel;
-  private JCheckBox enabledBox, windowlessBox, upgradeBox;
+  private JCheckBox enabledBox, windowlessBox, upgradeBox, detectionBox;
 
   private DefaultListModel libsListModel;
   private JList libsList;
@@ -134,6 +134,18 @@ public class ConfigWindow extends JFrame
 
     SpringUtilities.makeCompactGrid(upgradePanel,1, 2, PAD, PAD, PAD, PAD);
 
+    JPanel detectionPanel = new JPanel(new SpringLayout());
+    JLabel detectionLabel = new JLabel(
+      "Remember which reader opened each folder's files, to identify similar files faster");
+    detectionPanel.add(detectionLabel);
+
+    detectionBox =
+      new JCheckBox("", LociPrefs.isDetectionCacheEnabled());
+    detectionBox.addItemListener(this);
+    detectionPanel.add(detectionBox);
+
+    SpringUtilities.makeCompactGrid(detectionPanel,1, 2, PAD, PAD, PAD, PAD);
+
     JPanel sliceNamePanel = new JPanel(new SpringLayout());
     JLabel sliceNameLabel = new JLabel("Slice Label Pattern");
     sliceNamePanel.add(sliceNameLabel);
@@ -153,6 +165,7 @@ public class ConfigWindow extends JFrame
     SpringUtilities.makeCompactGrid(sliceNamePanel,1, 4, PAD, PAD, PAD, PAD);
 
     bfOptionsPanel.add(upgradePanel);
+    bfOptionsPanel.add(detectionPanel);
     bfOptionsPanel.add(sliceNamePanel);
     JLabel sliceDescription = new JLabel("<html>Customize the slice label by specifying a pattern string:"
                                           + "<br>%s - series index"
@@ -163,7 +176,7 @@ public class ConfigWindow extends JFrame
                                           + "<br>%t - T index"
                                           + "<br>%A - acquisition timestamp</html>");
     bfOptionsPanel.add(sliceDescription);
-    SpringUtilities.makeCompactGrid(bfOptionsPanel,3, 1, PAD, PAD, PAD, PAD);
+    SpringUtilities.makeCompactGrid(bfOptionsPanel,4, 1, PAD, PAD, PAD, PAD);
 
     JPanel installPanel = new JPanel();
     //tabs.addTab("Install", installPanel);
@@ -292,6 +305,10 @@ public class ConfigWindow extends JFrame
       Prefs.set(UPGRADE_CHECK_KEY, upgradeBox.isSelected());
       return;
     }
+    if (src == detectionBox) {
+      Prefs.set(LociPrefs.PREF_DETECTION_CACHE, detectionBox.isSelected());
+      return;
+    }
 
     Object value = formatsList.getSelectedValue();
     if (!(value instanceof FormatEntry)) return;
@@ -651,6 +668,8 @@ public class ConfigWindow extends JFrame
     if (entry == null) return;
     try {
       invokeMethod("PREF_READER_" + pref, "set", entry, value);
+      Class<?> utilClass = Class.forName("loci.plugins.util.LociPrefs");
+      utilClass.getMethod("resetReaderConfig").invoke(null);
     }
     catch (Throwable t) {
       t.printStackTrace();
@@ -85,6 +85,7 @@ public class LIFWidgets implements IFormatWidgets, ItemListener {
     if (box.equals(widgets[0])) {
       Prefs.set(LociPrefs.PREF_LEICA_LIF_PHYSICAL_SIZE, box.isSelected());
     }
+    LociPrefs.resetReaderConfig();
   }
 
 }
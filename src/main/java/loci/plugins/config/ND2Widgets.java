@@ -95,6 +95,7 @@ public class ND2Widgets implements IFormatWidgets, ItemListener {
     else if (box.equals(getWidgets()[1])) {
       Prefs.set(LociPrefs.PREF_ND2_CHUNKMAP, box.isSelected());
     }
+    LociPrefs.resetReaderConfig();
   }
 
 }
@@ -81,6 +81,7 @@ public class PictWidgets implements IFormatWidgets, ItemListener {
   public void itemStateChanged(ItemEvent e) {
     JCheckBox box = (JCheckBox) e.getSource();
     Prefs.set(LociPrefs.PREF_PICT_QTJAVA, box.isSelected());
+    LociPrefs.resetReaderConfig();
   }
 
 }
@@ -81,6 +81,7 @@ public class QTWidgets implements IFormatWidgets, ItemListener {
   public void itemStateChanged(ItemEvent e) {
     JCheckBox box = (JCheckBox) e.getSource();
     Prefs.set(LociPrefs.PREF_QT_QTJAVA, box.isSelected());
+    LociPrefs.resetReaderConfig();
   }
 
 }
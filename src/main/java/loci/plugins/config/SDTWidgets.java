@@ -81,6 +81,7 @@ public class SDTWidgets implements IFormatWidgets, ItemListener {
   public void itemStateChanged(ItemEvent e) {
     JCheckBox box = (JCheckBox) e.getSource();
     Prefs.set(LociPrefs.PREF_SDT_INTENSITY, box.isSelected());
+    LociPrefs.resetReaderConfig();
   }
 
 }
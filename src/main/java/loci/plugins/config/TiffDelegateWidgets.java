@@ -82,6 +82,7 @@ public class TiffDelegateWidgets implements IFormatWidgets, ItemListener {
   public void itemStateChanged(ItemEvent e) {
     JCheckBox box = (JCheckBox) e.getSource();
     Prefs.set(LociPrefs.PREF_TIFF_IMAGEIO, box.isSelected());
+    LociPrefs.resetReaderConfig();
   }
 
 }
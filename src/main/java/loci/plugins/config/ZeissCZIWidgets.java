@@ -92,6 +92,7 @@ public class ZeissCZIWidgets implements IFormatWidgets, ItemListener {
     else if (box.equals(widgets[1])) {
       Prefs.set(LociPrefs.PREF_CZI_AUTOSTITCH, box.isSelected());
     }
+    LociPrefs.resetReaderConfig();
   }
 
 }
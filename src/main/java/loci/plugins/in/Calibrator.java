@@ -92,6 +92,13 @@ public class Calibrator {
     // average any variable time interval values.
     if (!tcalPresent) tcal = computeVariableTimeInterval(meta, series);
 
+    // binned pixels cover several pixels of the original plane
+    final int binning = process.getBinning(series);
+    if (!process.getOptions().isVirtual() && binning > 1) {
+      xcal *= binning;
+      ycal *= binning;
+    }
+
     xcalPresent = !Double.isNaN(xcal);
     ycalPresent = !Double.isNaN(ycal);
     zcalPresent = !Double.isNaN(zcal);
@@ -50,6 +50,7 @@ import loci.formats.MinMaxCalculator;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.meta.MetadataStore;
 import loci.plugins.BF;
+import loci.plugins.util.BFVirtualStack;
 import loci.plugins.util.ImageProcessorReader;
 import loci.plugins.util.VirtualImagePlus;
 
@@ -162,6 +163,12 @@ public class Colorizer {
       final boolean doComposite = !options.isViewStandard() &&
         mode != -1 && cSize > 1 && cSize <= 7;
       if (doComposite) {
+        // composite display draws every channel at once
+        if (mode == CompositeImage.COMPOSITE &&
+          imp.getStack() instanceof BFVirtualStack)
+        {
+          ((BFVirtualStack) imp.getStack()).setBatchChannels(true);
+        }
         final ImagePlus toClose = imp;
         CompositeImage compImage = new CompositeImage(imp, mode) {
           @Override
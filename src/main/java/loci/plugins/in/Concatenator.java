@@ -31,11 +31,20 @@ import ij.ImagePlus;
 import ij.ImageStack;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import loci.plugins.util.ConcatenatedVirtualStack;
 
 /**
  * Logic for concatenating multiple images together.
  *
+ * Images are only compared against earlier outputs with the same width,
+ * height and type, which are looked up by hash rather than by scanning
+ * every output. Virtual stacks are concatenated into a
+ * {@link ConcatenatedVirtualStack}, so that no planes are read.
+ *
  * @author Curtis Rueden ctrueden at wisc.edu
  * @author Melissa Linkert melissa at glencoesoftware.com
  */
@@ -68,6 +77,10 @@ public class Concatenator {
     // list of output (possibly concatenated) images
     final List<ImagePlus> outputImps = new ArrayList<ImagePlus>();
 
+    // output images, grouped by XY resolution and processor type
+    final Map<String, List<ImagePlus>> groups =
+      new HashMap<String, List<ImagePlus>>();
+
     for (ImagePlus imp : imps) {
       final int width = imp.getWidth();
       final int height = imp.getHeight();
@@ -76,19 +89,21 @@ public class Concatenator {
       final int zSize = imp.getNSlices();
       final int tSize = imp.getNFrames();
 
+      final String key = width + "x" + height + ":" + type;
+      List<ImagePlus> group = groups.get(key);
+      if (group == null) {
+        group = new ArrayList<ImagePlus>();
+        groups.put(key, group);
+      }
+
       boolean append = false;
-      for (int k=0; k<outputImps.size(); k++) {
-        final ImagePlus outputImp = outputImps.get(k);
-        final int w = outputImp.getWidth();
-        final int h = outputImp.getHeight();
-        final int outType = outputImp.getType();
+      for (int k=0; k<group.size(); k++) {
+        final ImagePlus outputImp = group.get(k);
         final int c = outputImp.getNChannels();
         final int z = outputImp.getNSlices();
         final int t = outputImp.getNFrames();
 
         // verify that images are compatible
-        if (width != w || height != h) continue; // different XY resolution
-        if (type != outType) continue; // different processor type
         final boolean canAppendT = cSize == c && zSize == z;
         final boolean canAppendZ = cSize == c && tSize == t;
         final boolean canAppendC = zSize == z && tSize == t;
@@ -98,13 +113,8 @@ public class Concatenator {
         }
 
         // concatenate planes onto this output image
-        final ImageStack outputStack = outputImp.getStack();
-        final ImageStack inputStack = imp.getStack();
-        for (int s=0; s<inputStack.getSize(); s++) {
-          outputStack.addSlice(inputStack.getSliceLabel(s + 1),
-            inputStack.getProcessor(s + 1));
-        }
-        outputImp.setStack(outputImp.getTitle(), outputStack);
+        outputImp.setStack(outputImp.getTitle(),
+          append(outputImp.getStack(), imp.getStack()));
 
         // update image dimensions
 
@@ -125,10 +135,32 @@ public class Concatenator {
         // could not concatenate input image to any existing output;
         // append it to the list of outputs directly instead
         outputImps.add(imp);
+        group.add(imp);
       }
     }
 
     return outputImps;
   }
 
+  // -- Helper methods --
+
+  /** Appends the planes of the input stack to the output stack. */
+  private ImageStack append(ImageStack outputStack, ImageStack inputStack) {
+    if (outputStack.isVirtual() || inputStack.isVirtual()) {
+      // map the input planes into a composite stack, without reading them
+      final ConcatenatedVirtualStack stack;
+      if (outputStack instanceof ConcatenatedVirtualStack) {
+        stack = (ConcatenatedVirtualStack) outputStack;
+      }
+      else stack = new ConcatenatedVirtualStack(outputStack);
+      stack.add(inputStack);
+      return stack;
+    }
+    for (int s=0; s<inputStack.getSize(); s++) {
+      outputStack.addSlice(inputStack.getSliceLabel(s + 1),
+        inputStack.getProcessor(s + 1));
+    }
+    return outputStack;
+  }
+
 }
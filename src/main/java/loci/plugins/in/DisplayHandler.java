@@ -51,6 +51,7 @@ import loci.formats.gui.XMLWindow;
 import loci.formats.services.OMEXMLService;
 import loci.plugins.BF;
 import loci.plugins.util.DataBrowser;
+import loci.plugins.util.OMEModelWindow;
 import loci.plugins.util.ROIHandler;
 import loci.plugins.util.SearchableWindow;
 import loci.plugins.util.WindowTools;
@@ -70,6 +71,7 @@ public class DisplayHandler implements StatusListener {
   protected ImportProcess process;
   protected ImporterOptions options;
   protected XMLWindow xmlWindow;
+  protected OMEModelWindow omeModelWindow;
 
   // -- Constructor --
 
@@ -93,7 +95,12 @@ public class DisplayHandler implements StatusListener {
     return metaWindow;
   }
 
-  /** Displays OME-XML metadata in a tree in its own window. */
+  /**
+   * Displays OME-XML metadata in a tree in its own window.
+   * @deprecated Use {@link #displayOMEModel()}, which does not serialize
+   *   and parse the metadata.
+   */
+  @Deprecated
   public XMLWindow displayOMEXML() throws FormatException, IOException {
     if (!options.isShowOMEXML()) return null;
 
@@ -116,6 +123,22 @@ public class DisplayHandler implements StatusListener {
     return metaWindow;
   }
 
+  /**
+   * Displays OME metadata in a tree in its own window. The tree is
+   * read directly from the OME model, without serializing it to XML.
+   */
+  public OMEModelWindow displayOMEModel() {
+    if (!options.isShowOMEXML()) return null;
+
+    OMEModelWindow metaWindow =
+      new OMEModelWindow("OME Metadata - " + process.getIdName());
+    metaWindow.setMetadata(process.getOMEMetadata());
+    WindowTools.placeWindow(metaWindow);
+    metaWindow.setVisible(true);
+    omeModelWindow = metaWindow; // save reference to OME metadata window
+    return metaWindow;
+  }
+
   /** Displays the given images according to the configured options. */
   public void displayImages(ImagePlus[] imps) {
     if (imps != null) {
@@ -158,7 +181,7 @@ public class DisplayHandler implements StatusListener {
       subCTypes = new String[] {FormatTools.CHANNEL};
     }
 
-    new DataBrowser(imp, null, subCTypes, subC, xmlWindow);
+    new DataBrowser(imp, null, subCTypes, subC, omeModelWindow);
   }
 
   public void displayImage5D(ImagePlus imp) {
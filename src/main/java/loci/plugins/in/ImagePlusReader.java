@@ -30,6 +30,7 @@ package loci.plugins.in;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.io.FileInfo;
+import ij.plugin.Binner;
 import ij.process.ImageProcessor;
 import ij.process.LUT;
 
@@ -37,8 +38,15 @@ import java.awt.image.ColorModel;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import loci.common.DateTools;
 import loci.common.Location;
@@ -55,11 +63,13 @@ import loci.formats.meta.DummyMetadata;
 import loci.formats.meta.IMetadata;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.meta.MetadataStore;
+import loci.plugins.BF;
 import loci.plugins.Slicer;
 import loci.plugins.util.BFVirtualStack;
 import loci.plugins.util.ImageProcessorReader;
 import loci.plugins.util.LociPrefs;
 import loci.plugins.util.LuraWave;
+import loci.plugins.util.PlaneTransform;
 import loci.plugins.util.VirtualImagePlus;
 import ome.units.UNITS;
 import ome.units.quantity.Time;
@@ -79,6 +89,9 @@ public class ImagePlusReader implements StatusReporter {
   /** Special property prefix for storing planar LUTs. */
   public static final String PROP_LUT = "LUT-";
 
+  /** Maximum size of the strips in which binned planes are read, in bytes. */
+  static final long MAX_STRIP_BYTES = 64 * 1024 * 1024;
+
   // -- Fields --
 
   /**
@@ -88,6 +101,9 @@ public class ImagePlusReader implements StatusReporter {
 
   protected List<StatusListener> listeners = new Vector<StatusListener>();
 
+  /** Original metadata formatted for the images of the current read. */
+  private String metadataInfo;
+
   // -- Constructors --
 
   /**
@@ -234,6 +250,9 @@ public class ImagePlusReader implements StatusReporter {
 
     List<ImagePlus> imps = new ArrayList<ImagePlus>();
 
+    // format the original metadata again, in case it has been modified
+    metadataInfo = null;
+
     // beginning timing
     startTiming();
 
@@ -270,9 +289,12 @@ public class ImagePlusReader implements StatusReporter {
     throws FormatException, IOException
   {
     final ImporterOptions options = process.getOptions();
-    final int zCount = process.getZCount(s);
+    final boolean project = isProjected(process, thumbnail);
+    final int zCount = project && !options.isProjectionAxisT() ?
+      1 : process.getZCount(s);
     final int cCount = process.getCCount(s);
-    final int tCount = process.getTCount(s);
+    final int tCount = project && options.isProjectionAxisT() ?
+      1 : process.getTCount(s);
 
     final List<LUT> luts = new ArrayList<LUT>();
 
@@ -287,8 +309,9 @@ public class ImagePlusReader implements StatusReporter {
     final String seriesName = process.getOMEMetadata().getImageName(s);
     final String file = process.getCurrentFile();
     final IFormatReader reader = process.getReader();
-    final String title = constructImageTitle(reader,
+    String title = constructImageTitle(reader,
       file, seriesName, options.isGroupFiles());
+    if (project) title = getProjectionPrefix(options.getProjection()) + title;
 
     // create image
     final ImagePlus imp;
@@ -305,8 +328,11 @@ public class ImagePlusReader implements StatusReporter {
     // place metadata key/value pairs in ImageJ's info field
     // if concatenating images only store metadata on first series
     if (!options.isConcatenate() || s == 0) {
-      final String metadata = process.getOriginalMetadata().toString();
-      imp.setProperty("Info", metadata);
+      // the string is formatted once and shared by all images of this read
+      if (metadataInfo == null) {
+        metadataInfo = process.getOriginalMetadata().toString();
+      }
+      imp.setProperty("Info", metadataInfo);
     }
     imp.setProperty(PROP_SERIES, s);
 
@@ -323,6 +349,14 @@ public class ImagePlusReader implements StatusReporter {
     return imp;
   }
 
+  /** Gets the title prefix used by ImageJ's Z Project command. */
+  private static String getProjectionPrefix(String projection) {
+    if (ImporterOptions.PROJECTION_MAX.equals(projection)) return "MAX_";
+    if (ImporterOptions.PROJECTION_MIN.equals(projection)) return "MIN_";
+    if (ImporterOptions.PROJECTION_SUM.equals(projection)) return "SUM_";
+    return "AVG_";
+  }
+
   private ImageStack createVirtualStack(ImportProcess process, int s,
     List<LUT> luts) throws FormatException, IOException
   {
@@ -333,20 +367,40 @@ public class ImagePlusReader implements StatusReporter {
     final int cCount = process.getCCount(s);
     final int tCount = process.getTCount(s);
     final IMetadata meta = process.getOMEMetadata();
-    final int imageCount = reader.getImageCount();
+    final Region region = process.getCropRegion(s);
+    if (options.getBinning() > 1) {
+      BF.warn(options.isQuiet(), "XY binning is not applied to virtual stacks");
+    }
+    if (options.isProjection()) {
+      BF.warn(options.isQuiet(), "Projection is not applied to virtual stacks");
+    }
+
+    // only the selected planes and region are read, as in readPlanes
+    final boolean[] load = getPlanesToLoad(s);
+    int total = 0;
+    for (int i=0; i<load.length; i++) if (load[i]) total++;
+    final int[] planeIndexes = new int[total];
 
     // CTR FIXME: Make virtual stack work with different color modes?
     final BFVirtualStack virtualStack = new BFVirtualStack(options.getId(),
-      reader, false, false, false);
-    for (int i=0; i<imageCount; i++) {
+      reader, false, false, false, region);
+    for (int i=0, slice=0; i<load.length; i++) {
+      if (!load[i]) continue;
+      planeIndexes[slice++] = i;
       String label = constructSliceLabel(i, reader, meta, s, zCount, cCount, tCount);
       virtualStack.addSlice(label);
     }
+    if (total < load.length) virtualStack.setPlaneIndexes(planeIndexes);
+    virtualStack.setPlaneTransforms(options.getPlaneTransforms());
 
     if (luts != null) {
       for (int c=0; c<cCount; c++) {
-        int index = reader.getIndex(0, c, 0);
-        ImageProcessor ip = reader.openProcessors(index)[0];
+        // the color model does not depend on the pixels read
+        int index = reader.getIndex(process.getZBegin(s),
+          process.getCBegin(s) + c * process.getCStep(s),
+          process.getTBegin(s));
+        ImageProcessor ip =
+          reader.openProcessors(index, region.x, region.y, 1, 1)[0];
         final ColorModel cm = ip.getColorModel();
         final LUT lut = cm instanceof LUT ? (LUT) cm : null;
         luts.add(lut);
@@ -375,31 +429,134 @@ public class ImagePlusReader implements StatusReporter {
     final List<ImageProcessor> procs = new ArrayList<ImageProcessor>();
     final List<String> labels = new ArrayList<String>();
 
+    // projected planes are folded into one output plane per position
+    // along the other axes, numbered in order of first appearance
+    final boolean project = isProjected(process, thumbnail);
+    final boolean axisT = process.getOptions().isProjectionAxisT();
+    final Projector projector = project ?
+      new Projector(process.getOptions().getProjection()) : null;
+    final Map<Long, Integer> outputs = new HashMap<Long, Integer>();
+    final ExecutorService folder = project ? createFolder() : null;
+    Future<?> folding = null;
+
     // read applicable image planes
     final Region region = process.getCropRegion(s);
-    for (int i=0; i<load.length; i++) {
-      if (!load[i]) continue;
-
-      // limit message update rate
-      updateTiming(s, current, current++, total);
+    final int binning = thumbnail ? 1 : process.getBinning(s);
+    try {
+      for (int i=0; i<load.length; i++) {
+        if (!load[i]) continue;
+
+        // limit message update rate
+        updateTiming(s, current, current++, total);
+
+        // get image processor for ith plane
+        final ImageProcessor[] p = binning > 1 ?
+          readBinnedProcessors(process, i, region, binning) :
+          readProcessors(process, i, region, thumbnail);
+        if (p == null || p.length == 0) {
+          throw new FormatException("Cannot read plane #" + i);
+        }
+        if (!thumbnail) transform(process, i, p);
+        // generate a label for ith plane
+        String label = constructSliceLabel(i, reader, meta, s,
+          zCount, cCount, tCount);
+
+        if (project) {
+          final int[] zct = reader.getZCTCoords(i);
+          final long position = (long) zct[axisT ? 0 : 2] *
+            reader.getEffectiveSizeC() + zct[1];
+          final int[] indexes = new int[p.length];
+          for (int k=0; k<p.length; k++) {
+            final Long key = position * p.length + k;
+            Integer index = outputs.get(key);
+            if (index == null) {
+              index = outputs.size();
+              outputs.put(key, index);
+              labels.add(label);
+            }
+            indexes[k] = index;
+          }
+          // fold the plane while the next one is read
+          waitFor(folding);
+          folding = folder.submit(new Runnable() {
+            @Override
+            public void run() {
+              for (int k=0; k<p.length; k++) projector.add(indexes[k], p[k]);
+            }
+          });
+          continue;
+        }
 
-      // get image processor for ith plane
-      final ImageProcessor[] p = readProcessors(process, i, region, thumbnail);
-      if (p == null || p.length == 0) {
-        throw new FormatException("Cannot read plane #" + i);
+        for (ImageProcessor ip : p) {
+          procs.add(ip);
+          labels.add(label);
+        }
       }
-      // generate a label for ith plane
-      String label = constructSliceLabel(i, reader, meta, s, zCount, cCount, tCount);
+      waitFor(folding);
+    }
+    finally {
+      if (folder != null) folder.shutdownNow();
+    }
 
-      for (ImageProcessor ip : p) {
-        procs.add(ip);
-        labels.add(label);
+    if (project) {
+      for (int i=0; i<projector.getSize(); i++) {
+        procs.add(projector.getResult(i));
       }
     }
 
     return createStack(procs, labels, luts);
   }
 
+  /** Applies the import's plane transforms to the given decoded planes. */
+  private static void transform(ImportProcess process, int no,
+    ImageProcessor[] p)
+  {
+    final IFormatReader reader = process.getReader();
+    final List<PlaneTransform> transforms =
+      process.getOptions().getPlaneTransforms();
+    for (PlaneTransform transform : transforms) {
+      for (int k=0; k<p.length; k++) {
+        p[k] = transform.transform(p[k], reader, no);
+      }
+    }
+  }
+
+  /** Checks whether the planes of each series are projected while read. */
+  private static boolean isProjected(ImportProcess process,
+    boolean thumbnail)
+  {
+    final ImporterOptions options = process.getOptions();
+    return !thumbnail && !options.isVirtual() && options.isProjection();
+  }
+
+  private static ExecutorService createFolder() {
+    return Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "BioFormats-Projector");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /** Waits for the given projection task, rethrowing its failure. */
+  private static void waitFor(Future<?> task) throws FormatException {
+    if (task == null) return;
+    try {
+      task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FormatException(e);
+    }
+    catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof Error) throw (Error) cause;
+      throw new FormatException(cause);
+    }
+  }
+
   /**
    * HACK: This method mainly exists to prompt the user for a missing
    * LuraWave license code, in the case of LWF-compressed Flex.
@@ -434,6 +591,42 @@ public class ImagePlusReader implements StatusReporter {
     throw new FormatException(LuraWave.TOO_MANY_TRIES);
   }
 
+  /**
+   * Reads the given plane reduced by the given XY binning factor, averaging
+   * each block of pixels. Large planes are read in strips, so that only one
+   * strip is held at full resolution.
+   */
+  private ImageProcessor[] readBinnedProcessors(ImportProcess process,
+    int no, Region r, int binning) throws FormatException, IOException
+  {
+    final ImageProcessorReader reader = process.getReader();
+    final int w = r.width / binning;
+    final int h = r.height / binning;
+    final long rowBytes = (long) r.width * reader.getRGBChannelCount() *
+      FormatTools.getBytesPerPixel(reader.getPixelType());
+    final int rows = (int) Math.max(1, MAX_STRIP_BYTES / rowBytes / binning);
+    final int stripHeight = Math.min(h, rows) * binning;
+
+    final Binner binner = new Binner();
+    ImageProcessor[] binned = null;
+    for (int y=0; y<h*binning; y+=stripHeight) {
+      final int height = Math.min(stripHeight, h * binning - y);
+      final Region strip = new Region(r.x, r.y + y, r.width, height);
+      final ImageProcessor[] p = readProcessors(process, no, strip, false);
+      if (binned == null) binned = new ImageProcessor[p.length];
+      for (int c=0; c<p.length; c++) {
+        final ImageProcessor ip =
+          binner.shrink(p[c], binning, binning, Binner.AVERAGE);
+        if (height == h * binning) binned[c] = ip;
+        else {
+          if (binned[c] == null) binned[c] = ip.createProcessor(w, h);
+          binned[c].insert(ip, 0, y / binning);
+        }
+      }
+    }
+    return binned;
+  }
+
   // -- Helper methods - image post processing --
 
   private List<ImagePlus> concatenate(List<ImagePlus> imps) {
@@ -33,6 +33,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import loci.common.DebugTools;
 import loci.common.Location;
@@ -47,6 +54,7 @@ import loci.common.services.ServiceFactory;
 import loci.formats.ChannelFiller;
 import loci.formats.ChannelSeparator;
 import loci.formats.ClassList;
+import loci.formats.CoreMetadata;
 import loci.formats.DimensionSwapper;
 import loci.formats.FilePattern;
 import loci.formats.FileStitcher;
@@ -60,9 +68,11 @@ import loci.formats.in.MetadataLevel;
 import loci.formats.meta.IMetadata;
 import loci.formats.services.OMEXMLService;
 import loci.plugins.BF;
+import loci.plugins.util.DetectionCache;
 import loci.plugins.util.ImageProcessorReader;
 import loci.plugins.util.LociPrefs;
 import loci.plugins.util.LuraWave;
+import loci.plugins.util.ParallelTileReader;
 import loci.plugins.util.VirtualReader;
 import loci.plugins.util.WindowTools;
 import ome.xml.model.enums.DimensionOrder;
@@ -78,6 +88,14 @@ import ome.xml.model.enums.EnumerationException;
  */
 public class ImportProcess implements StatusReporter {
 
+  // -- Constants --
+
+  /** Minimum number of grouped files to initialize in parallel. */
+  private static final int MIN_PARALLEL_FILES = 16;
+
+  /** Memory kept free by the automatic memory policy, in bytes. */
+  private static final long MEMORY_PADDING = 20 * 1024 * 1024; // 20 MB
+
   // -- Fields --
 
   private List<StatusListener> listeners = new ArrayList<StatusListener>();
@@ -168,6 +186,7 @@ public class ImportProcess implements StatusReporter {
     step(ImportStep.METADATA);
     if (cancel) return false;
     initializeMetadata();
+    applyMemoryPolicy();
 
     step(ImportStep.COMPLETE);
     return true;
@@ -416,34 +435,84 @@ public class ImportProcess implements StatusReporter {
     return (getTEnd(s) - getTBegin(s) + getTStep(s)) / getTStep(s);
   }
 
+  /**
+   * Gets the factor by which planes of the given series are binned in X
+   * and Y, limited by the size of the crop region. Binning is not applied
+   * to virtual stacks.
+   * Valid only after {@link ImportStep#STACK}.
+   */
+  public int getBinning(int s) {
+    if (options.isVirtual()) return 1;
+    final Region region = getCropRegion(s);
+    final int max = Math.max(1, Math.min(region.width, region.height));
+    return Math.min(options.getBinning(), max);
+  }
+
   /**
    * Gets a projection of required memory in bytes.
    * Valid only after {@link ImportStep#SERIES}.
    */
   public long getMemoryUsage() {
+    return getMemoryUsage(options.isVirtual());
+  }
+
+  /**
+   * Gets a projection of required memory in bytes, for a virtual or
+   * non-virtual import. Accounts for the ImageJ pixel types into which
+   * planes are converted, XY binning, projection, the buffers used while
+   * reading a plane, and the images ImageJ uses for display.
+   * Valid only after {@link ImportStep#SERIES}.
+   */
+  public long getMemoryUsage(boolean virtual) {
     final int seriesCount = getSeriesCount();
-    long total = 0;
+    final boolean display = !options.isViewNone();
+    long total = 0, reading = 0;
     for (int s=0; s<seriesCount; s++) {
       if (!options.isSeriesOn(s)) continue;
       reader.setSeries(s);
-      // determine size of one image plane
+      // determine size of one image plane, before and after conversion
       final Region cropRegion = getCropRegion(s);
-      final int bpp = FormatTools.getBytesPerPixel(reader.getPixelType());
-      final long planeSize = bpp * cropRegion.width * cropRegion.height;
+      final long pixels = (long) cropRegion.width * cropRegion.height;
+      final int pixelType = reader.getPixelType();
+      final int bpp = FormatTools.getBytesPerPixel(pixelType);
+      final long rawSize = pixels * bpp * reader.getRGBChannelCount();
+      final long planeSize = pixels * getImageJBytesPerPixel(pixelType);
+      // binned planes are read in strips of limited size
+      final int binning = virtual ? 1 : getBinning(s);
+      final long binnedPixels = pixels / ((long) binning * binning);
+      final long binnedSize = planeSize / ((long) binning * binning);
+      final double readFraction = binning > 1 ?
+        Math.min(1, (double) ImagePlusReader.MAX_STRIP_BYTES / rawSize) : 1;
       // determine total number of image planes
       final int cCount = getCCount(s);
       final int zCount = getZCount(s);
       final int tCount = getTCount(s);
-      final long planeCount = cCount * zCount * tCount;
+      final long planeCount = (long) cCount * zCount * tCount;
       // determine active number of image planes
-      final boolean isVirtual = options.isVirtual();
       final long activeChannels = options.isColorModeComposite() ? cCount : 1;
-      final long activePlanes = isVirtual ? activeChannels : planeCount;
+      final boolean project = !virtual && options.isProjection();
+      final int projected = !project ? 1 :
+        options.isProjectionAxisT() ? tCount : zCount;
+      final long activePlanes =
+        virtual ? activeChannels : planeCount / projected;
       // compute total memory footprint for this series
-      final long seriesSize = planeSize * activePlanes;
-      total += seriesSize;
+      total += binnedSize * activePlanes;
+      // projected planes are accumulated as 32-bit values
+      if (project) total += binnedPixels * 4 * activePlanes;
+      // displayed images have a snapshot plane and a 32-bit screen image
+      if (display) total += binnedSize + binnedPixels * 4;
+      // a plane (or strip) is read into raw, split and converted buffers
+      final long buffers = (long) (readFraction * (2 * rawSize + planeSize));
+      reading = Math.max(reading, buffers);
     }
-    return total;
+    return total + reading;
+  }
+
+  /** Gets the amount of memory which can still be allocated, in bytes. */
+  public long getAvailableMemory() {
+    final Runtime r = Runtime.getRuntime();
+    final long usedMem = r.totalMemory() - r.freeMemory();
+    return r.maxMemory() - usedMem;
   }
 
   // -- ImportProcess methods - post-METADATA --
@@ -518,6 +587,15 @@ public class ImportProcess implements StatusReporter {
     }
     r.setId(options.getId());
 
+    // the stitcher initializes each file when it is first read; in virtual
+    // mode, or when only some planes are read, that is kept as is, as the
+    // remaining files take their dimensions from the first file
+    if (fileStitcher != null && !options.isVirtual() &&
+      !options.isSpecifyRanges())
+    {
+      initializeStitchedFiles();
+    }
+
     if (options.isGroupFiles()) {
       options.setId(fileStitcher.getFilePattern().getPattern());
     }
@@ -537,6 +615,16 @@ public class ImportProcess implements StatusReporter {
     }
     if (options.doStitchTiles()) {
       r = tileStitcher = new TileStitcher(r);
+      if (options.isLocal()) {
+        r = new ParallelTileReader(r, new ParallelTileReader.ReaderFactory() {
+          @Override
+          public IFormatReader createReader()
+            throws FormatException, IOException
+          {
+            return createTileReader();
+          }
+        });
+      }
     }
     r = virtualReader = new VirtualReader(r);
     reader = new ImageProcessorReader(r);
@@ -549,6 +637,112 @@ public class ImportProcess implements StatusReporter {
     computeSeriesLabels(reader);
   }
 
+  /**
+   * Initializes the readers of all grouped files in parallel, rather than one
+   * at a time as the planes are read.
+   */
+  private void initializeStitchedFiles() {
+    final String[] files = fileStitcher.getFilePattern().getFiles();
+    final IFormatReader[] readers = fileStitcher.getUnderlyingReaders();
+    // readers map directly to files only if there is a single pattern
+    if (files == null || readers == null || files.length != readers.length ||
+      files.length < MIN_PARALLEL_FILES)
+    {
+      return;
+    }
+    int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+      files.length);
+    if (threads < 2) return;
+
+    BF.status(options.isQuiet(), "Initializing " + files.length + " files");
+    final AtomicInteger threadNumber = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(threads,
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r,
+            "BioFormats-FileInit-" + threadNumber.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+    for (int i=0; i<files.length; i++) {
+      final IFormatReader fileReader = readers[i];
+      final String file = files[i];
+      if (fileReader == null || fileReader.getCurrentFile() != null) continue;
+      tasks.add(pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws FormatException, IOException {
+          // as FileStitcher does, each file is read on its own
+          fileReader.setGroupFiles(false);
+          fileReader.setId(file);
+          return null;
+        }
+      }));
+    }
+    pool.shutdown();
+    try {
+      for (Future<Void> task : tasks) {
+        try {
+          task.get();
+        }
+        catch (ExecutionException e) {
+          // the file will be initialized again when its planes are read
+          BF.debug("Could not initialize file: " + e.getCause());
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      pool.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Creates an independent copy of the reader stack up to the tile stitcher,
+   * with the same dimension orders, so that tiles can be read concurrently.
+   */
+  private IFormatReader createTileReader()
+    throws FormatException, IOException
+  {
+    IFormatReader r = LociPrefs.makeImageReader();
+    r.setMetadataFiltered(true);
+    r.setGroupFiles(baseReader.isGroupFiles());
+    r.setMetadataOptions(baseReader.getMetadataOptions());
+    try {
+      ServiceFactory factory = new ServiceFactory();
+      OMEXMLService service = factory.getInstance(OMEXMLService.class);
+      r.setMetadataStore(service.createOMEXMLMetadata());
+    }
+    catch (DependencyException e) {
+      throw new FormatException(e);
+    }
+    catch (ServiceException e) {
+      throw new FormatException(e);
+    }
+    if (fileStitcher != null) {
+      FileStitcher stitcher = new FileStitcher(r);
+      stitcher.setUsingPatternIds(true);
+      stitcher.setCanChangePattern(false);
+      r = stitcher;
+    }
+    r = new ChannelFiller(r);
+    r = new ChannelSeparator(r);
+    DimensionSwapper swapper = new DimensionSwapper(r);
+    r = new TileStitcher(swapper);
+    r.setId(options.getId());
+
+    final String stackOrder = getStackOrder();
+    for (int s=0; s<r.getSeriesCount(); s++) {
+      r.setSeries(s);
+      String dimOrder = options.getInputOrder(s);
+      if (dimOrder != null) swapper.swapDimensions(dimOrder);
+      swapper.setOutputOrder(stackOrder);
+    }
+    return r;
+  }
+
   /** Performed following ImportStep.SERIES notification. */
   private void initializeSeries() { }
 
@@ -616,9 +810,14 @@ public class ImportProcess implements StatusReporter {
   private void createBaseReader() throws FormatException, IOException {
     if (options.isLocal() || options.isHTTP()) {
       BF.status(options.isQuiet(), "Identifying " + idName);
-      imageReader = LociPrefs.makeImageReader();
-      baseReader = imageReader.getReader(options.isUsingPatternIds() ?
-        new FilePattern(options.getId()).getFiles()[0] : options.getId());
+      String id = options.isUsingPatternIds() ?
+        new FilePattern(options.getId()).getFiles()[0] : options.getId();
+      boolean useCache =
+        options.isLocal() && LociPrefs.isDetectionCacheEnabled();
+      imageReader = useCache ? DetectionCache.getCachedReader(id) : null;
+      if (imageReader == null) imageReader = LociPrefs.makeImageReader();
+      baseReader = imageReader.getReader(id);
+      if (useCache) DetectionCache.record(id, baseReader.getClass());
     }
     else if (options.isOMERO()) {
       BF.status(options.isQuiet(), "Establishing server connection");
@@ -669,6 +868,87 @@ public class ImportProcess implements StatusReporter {
     DebugTools.enableIJLogging(IJ.debugMode);
   }
 
+  /**
+   * With the automatic memory policy, opens datasets which would not fit in
+   * the available memory as virtual stacks, or failing that, at lower
+   * pyramid resolutions, or failing that, with XY binning.
+   */
+  private void applyMemoryPolicy() {
+    if (!options.isMemoryPolicyAuto() || options.isViewNone()) return;
+    final long budget = getAvailableMemory() - MEMORY_PADDING;
+    final long needed = getMemoryUsage();
+    if (needed <= budget) return;
+
+    if (!options.isVirtual()) {
+      options.setVirtual(true);
+      BF.warn(options.isQuiet(), getIdName() + ": approximately " +
+        toMB(needed) + " MB is needed but only " + toMB(budget) +
+        " MB is available; using a virtual stack");
+      if (getMemoryUsage() <= budget) return;
+    }
+
+    // even a virtual stack does not fit; use lower pyramid resolutions
+    final List<CoreMetadata> core = reader.getCoreMetadataList();
+    if (!options.openAllSeries() && core.size() == getSeriesCount()) {
+      for (int s=0; s<core.size(); s++) {
+        if (!options.isSeriesOn(s) || core.get(s).resolutionCount <= 1) {
+          continue;
+        }
+        final int last = s + core.get(s).resolutionCount - 1;
+        int resolution = s;
+        while (resolution < last && getMemoryUsage() > budget) {
+          options.setSeriesOn(resolution, false);
+          options.setSeriesOn(++resolution, true);
+        }
+        if (resolution != s) {
+          BF.warn(options.isQuiet(), getIdName() + ": opening series " +
+            (s + 1) + " at resolution " + (resolution - s) + " (" +
+            core.get(resolution).sizeX + "x" + core.get(resolution).sizeY +
+            ") to fit in the available memory");
+        }
+        s = last;
+      }
+      if (getMemoryUsage() <= budget) return;
+    }
+
+    // still too large; read binned planes, which only apply without a
+    // virtual stack, using the smallest factor that fits
+    if (applyBinning(budget)) return;
+
+    BF.warn(options.isQuiet(), getIdName() + ": approximately " +
+      toMB(getMemoryUsage()) + " MB is needed, which exceeds the " +
+      toMB(budget) + " MB available");
+  }
+
+  /**
+   * Tries increasing XY binning factors for a non-virtual import, until
+   * one fits in the given budget. Restores the previous options and
+   * returns false if none does.
+   */
+  private boolean applyBinning(long budget) {
+    int maxBinning = 1;
+    for (int s=0; s<getSeriesCount(); s++) {
+      if (!options.isSeriesOn(s)) continue;
+      final Region region = getCropRegion(s);
+      maxBinning = Math.max(maxBinning,
+        Math.min(region.width, region.height));
+    }
+    final boolean virtual = options.isVirtual();
+    final int binning = options.getBinning();
+    options.setVirtual(false);
+    for (int b=binning*2; b<=maxBinning; b*=2) {
+      options.setBinning(b);
+      if (getMemoryUsage() <= budget) {
+        BF.warn(options.isQuiet(), getIdName() + ": opening with " + b +
+          "x" + b + " XY binning to fit in the available memory");
+        return true;
+      }
+    }
+    options.setVirtual(virtual);
+    options.setBinning(binning);
+    return false;
+  }
+
   // -- Helper methods - ImportStep.FILE --
 
   /** Performed following ImportStep.FILE notification. */
@@ -708,6 +988,25 @@ public class ImportProcess implements StatusReporter {
     throw new FormatException(LuraWave.TOO_MANY_TRIES);
   }
 
+  /** Gets the bytes per pixel of the ImageJ processors for a pixel type. */
+  private static int getImageJBytesPerPixel(int pixelType) {
+    switch (pixelType) {
+      case FormatTools.INT8:
+      case FormatTools.UINT8:
+        return 1;
+      case FormatTools.INT16:
+      case FormatTools.UINT16:
+        return 2;
+      default:
+        // 32-bit integer and double planes become FloatProcessors
+        return 4;
+    }
+  }
+
+  private static long toMB(long bytes) {
+    return bytes / (1024 * 1024);
+  }
+
   private void computeSeriesLabels(IFormatReader r) {
     final int seriesCount = r.getSeriesCount();
     seriesLabels = new String[seriesCount];
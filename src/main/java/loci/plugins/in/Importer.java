@@ -79,7 +79,7 @@ public class Importer {
       BF.debug("display metadata");
       DisplayHandler displayHandler = new DisplayHandler(process);
       displayHandler.displayOriginalMetadata();
-      displayHandler.displayOMEXML();
+      displayHandler.displayOMEModel();
 
       BF.debug("read pixel data");
       ImagePlusReader reader = new ImagePlusReader(process);
@@ -114,6 +114,7 @@ public class Importer {
     }
     options.parseArg(arg);
     options.checkObsoleteOptions();
+    options.checkMacroOptions();
     return options;
   }
 
@@ -27,14 +27,12 @@
 
 package loci.plugins.in;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.Map;
 
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
-import loci.formats.MetadataTools;
 
 /**
  * Helper class for storing original metadata key/value pairs.
@@ -77,23 +75,26 @@ public class ImporterMetadata extends HashMap<String, Object> {
       }
 
       // merge series metadata
-      Hashtable<String, Object> seriesMeta = r.getSeriesMetadata();
-      MetadataTools.merge(seriesMeta, this, s);
+      for (Map.Entry<String, Object> entry :
+        r.getSeriesMetadata().entrySet())
+      {
+        put(s + entry.getKey(), entry.getValue());
+      }
 
       // merge core values
       final String pad = " "; // puts core values first when alphabetizing
-      put(pad + s + "SizeX", new Integer(r.getSizeX()));
-      put(pad + s + "SizeY", new Integer(r.getSizeY()));
-      put(pad + s + "SizeZ", new Integer(r.getSizeZ()));
-      put(pad + s + "SizeT", new Integer(r.getSizeT()));
-      put(pad + s + "SizeC", new Integer(r.getSizeC()));
-      put(pad + s + "IsRGB", new Boolean(r.isRGB()));
+      put(pad + s + "SizeX", r.getSizeX());
+      put(pad + s + "SizeY", r.getSizeY());
+      put(pad + s + "SizeZ", r.getSizeZ());
+      put(pad + s + "SizeT", r.getSizeT());
+      put(pad + s + "SizeC", r.getSizeC());
+      put(pad + s + "IsRGB", r.isRGB());
       put(pad + s + "PixelType",
         FormatTools.getPixelTypeString(r.getPixelType()));
-      put(pad + s + "LittleEndian", new Boolean(r.isLittleEndian()));
+      put(pad + s + "LittleEndian", r.isLittleEndian());
       put(pad + s + "DimensionOrder", r.getDimensionOrder());
-      put(pad + s + "IsInterleaved", new Boolean(r.isInterleaved()));
-      put(pad + s + "BitsPerPixel", new Integer(r.getBitsPerPixel()));
+      put(pad + s + "IsInterleaved", r.isInterleaved());
+      put(pad + s + "BitsPerPixel", r.getBitsPerPixel());
 
       String seriesName = process.getOMEMetadata().getImageName(i);
       put(pad + "Series " + i + " Name", seriesName);
@@ -101,13 +102,12 @@ public class ImporterMetadata extends HashMap<String, Object> {
     r.setSeries(oldSeries);
   }
 
+  // -- ImporterMetadata methods --
+
   /** Returns a string with each key/value pair on its own line. */
   public String getMetadataString(String separator) {
-    ArrayList<String> keys = new ArrayList<String>(keySet());
-    Collections.sort(keys);
-
-    StringBuffer sb = new StringBuffer();
-    for (String key : keys) {
+    StringBuilder sb = new StringBuilder();
+    for (String key : getSortedKeys()) {
       sb.append(key);
       sb.append(separator);
       sb.append(get(key));
@@ -125,6 +125,12 @@ public class ImporterMetadata extends HashMap<String, Object> {
 
   // -- Helper methods --
 
+  private String[] getSortedKeys() {
+    final String[] keys = keySet().toArray(new String[0]);
+    Arrays.sort(keys);
+    return keys;
+  }
+
   /** Computes the given value's number of digits. */
   private static int digits(int value) {
     int digits = 0;
@@ -40,6 +40,7 @@ import loci.plugins.prefs.DoubleOption;
 import loci.plugins.prefs.OptionsList;
 import loci.plugins.prefs.StringOption;
 import loci.plugins.util.LibraryChecker;
+import loci.plugins.util.PlaneTransform;
 
 /**
  * Helper class for managing Bio-Formats Importer options.
@@ -51,6 +52,7 @@ public class ImporterOptions extends OptionsList {
 
   // option keys
   public static final String KEY_AUTOSCALE       = "autoscale";
+  public static final String KEY_BINNING         = "binning";
   public static final String KEY_COLOR_MODE      = "colorMode";
   public static final String KEY_CONCATENATE     = "concatenate";
   public static final String KEY_CROP            = "crop";
@@ -60,7 +62,10 @@ public class ImporterOptions extends OptionsList {
   public static final String KEY_UNGROUP_FILES   = "ungroupFiles";
   public static final String KEY_ID              = "id";
   public static final String KEY_LOCATION        = "location";
+  public static final String KEY_MEMORY_POLICY   = "memoryPolicy";
   public static final String KEY_OPEN_ALL_SERIES = "openAllSeries";
+  public static final String KEY_PROJECTION      = "projection";
+  public static final String KEY_PROJECTION_AXIS = "projectionAxis";
   public static final String KEY_QUIET           = "quiet";
   //public static final String KEY_RECORD          = "record";
   public static final String KEY_SHOW_METADATA   = "showMetadata";
@@ -92,6 +97,21 @@ public class ImporterOptions extends OptionsList {
   public static final String LOCATION_HTTP  = "Internet";
   public static final String LOCATION_OMERO = "OMERO";
 
+  // possible values for memoryPolicy
+  public static final String MEMORY_POLICY_WARN = "Warn";
+  public static final String MEMORY_POLICY_AUTO = "Auto";
+
+  // possible values for projection
+  public static final String PROJECTION_NONE = "None";
+  public static final String PROJECTION_MAX = "Max Intensity";
+  public static final String PROJECTION_MIN = "Min Intensity";
+  public static final String PROJECTION_AVERAGE = "Average Intensity";
+  public static final String PROJECTION_SUM = "Sum Slices";
+
+  // possible values for projectionAxis
+  public static final String PROJECTION_AXIS_Z = "Z";
+  public static final String PROJECTION_AXIS_T = "T";
+
   //possible values for roiMode
   public static final String ROIS_MODE_MANAGER = "ROI manager";
   public static final String ROIS_MODE_OVERLAY = "Overlay";
@@ -157,6 +177,10 @@ public class ImporterOptions extends OptionsList {
   // whether to treat the given id as a file pattern directly
   private boolean usePatternIds;
 
+  // transforms applied to each plane after it is read
+  private List<PlaneTransform> planeTransforms =
+    new ArrayList<PlaneTransform>();
+
   // -- Constructor --
 
   public ImporterOptions() throws IOException {
@@ -230,6 +254,19 @@ public class ImporterOptions extends OptionsList {
     else if (customColorize) setColorMode(COLOR_MODE_CUSTOM);
   }
 
+  /**
+   * Reads the options which have no field in the main dialog from the macro
+   * options, since the dialog harvests only its own fields.
+   */
+  public void checkMacroOptions() {
+    final String macroOptions = Macro.getOptions();
+    if (macroOptions == null) return;
+    checkMacroValue(macroOptions, KEY_BINNING);
+    checkMacroValue(macroOptions, KEY_MEMORY_POLICY);
+    checkMacroValue(macroOptions, KEY_PROJECTION);
+    checkMacroValue(macroOptions, KEY_PROJECTION_AXIS);
+  }
+
   // -- ImporterOptions methods - base options accessors and mutators --
 
   // autoscale
@@ -237,6 +274,20 @@ public class ImporterOptions extends OptionsList {
   public boolean isAutoscale() { return isSet(KEY_AUTOSCALE); }
   public void setAutoscale(boolean b) { setValue(KEY_AUTOSCALE, b); }
 
+  // binning
+  public String getBinningInfo() { return getInfo(KEY_BINNING); }
+  public int getBinning() {
+    try {
+      return Math.max(1, Integer.parseInt(getValue(KEY_BINNING).trim()));
+    }
+    catch (NumberFormatException e) {
+      return 1;
+    }
+  }
+  public void setBinning(int binning) {
+    setValue(KEY_BINNING, String.valueOf(binning));
+  }
+
   // colorMode
   public String getColorModeInfo() { return getInfo(KEY_COLOR_MODE); }
   public String getColorMode() { return getValue(KEY_COLOR_MODE); }
@@ -302,11 +353,44 @@ public class ImporterOptions extends OptionsList {
   public boolean isOMERO() { return LOCATION_OMERO.equals(getLocation()); }
   public void setLocation(String s) { setValue(KEY_LOCATION, s); }
 
+  // memoryPolicy
+  public String getMemoryPolicyInfo() { return getInfo(KEY_MEMORY_POLICY); }
+  public String getMemoryPolicy() { return getValue(KEY_MEMORY_POLICY); }
+  public String[] getMemoryPolicies() { return getPossible(KEY_MEMORY_POLICY); }
+  public boolean isMemoryPolicyAuto() {
+    return MEMORY_POLICY_AUTO.equals(getMemoryPolicy());
+  }
+  public void setMemoryPolicy(String s) { setValue(KEY_MEMORY_POLICY, s); }
+
   // openAllSeries
   public String getOpenAllSeriesInfo() { return getInfo(KEY_OPEN_ALL_SERIES); }
   public boolean openAllSeries() { return isSet(KEY_OPEN_ALL_SERIES); }
   public void setOpenAllSeries(boolean b) { setValue(KEY_OPEN_ALL_SERIES, b); }
 
+  // projection
+  public String getProjectionInfo() { return getInfo(KEY_PROJECTION); }
+  public String getProjection() { return getValue(KEY_PROJECTION); }
+  public String[] getProjections() { return getPossible(KEY_PROJECTION); }
+  public boolean isProjection() {
+    return !PROJECTION_NONE.equals(getProjection());
+  }
+  public void setProjection(String s) { setValue(KEY_PROJECTION, s); }
+
+  // projectionAxis
+  public String getProjectionAxisInfo() {
+    return getInfo(KEY_PROJECTION_AXIS);
+  }
+  public String getProjectionAxis() { return getValue(KEY_PROJECTION_AXIS); }
+  public String[] getProjectionAxes() {
+    return getPossible(KEY_PROJECTION_AXIS);
+  }
+  public boolean isProjectionAxisT() {
+    return PROJECTION_AXIS_T.equals(getProjectionAxis());
+  }
+  public void setProjectionAxis(String s) {
+    setValue(KEY_PROJECTION_AXIS, s);
+  }
+
   // quiet
   public String getQuietInfo() { return getInfo(KEY_QUIET); }
   public boolean isQuiet() { return isSet(KEY_QUIET); }
@@ -516,6 +600,11 @@ public class ImporterOptions extends OptionsList {
   public boolean isUsingPatternIds() { return usePatternIds; }
   public void setUsingPatternIds(boolean b) { usePatternIds = b; }
 
+  // plane transform options
+  public List<PlaneTransform> getPlaneTransforms() { return planeTransforms; }
+  public void addPlaneTransform(PlaneTransform t) { planeTransforms.add(t); }
+  public void clearPlaneTransforms() { planeTransforms.clear(); }
+
   // -- Helper methods --
 
   private <T extends Object> void set(List<T> list,
@@ -530,6 +619,18 @@ public class ImporterOptions extends OptionsList {
     return list.get(index);
   }
 
+  /**
+   * Sets the given string option from the specified options, where it is
+   * named after its label as in a dialog. Impossible values are ignored.
+   */
+  private void checkMacroValue(String options, String key) {
+    final String value =
+      Macro.getValue(options, Macro.trimKey(getLabel(key)), null);
+    if (value == null) return;
+    if (getPossible(key).length > 0 && !isPossible(key, value)) return;
+    setValue(key, value);
+  }
+
   /** Tests whether the given boolean key is set in the specified options. */
   protected boolean checkKey(String options, String key) {
     if (options == null) return false;
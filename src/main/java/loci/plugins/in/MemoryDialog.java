@@ -64,7 +64,7 @@ public class MemoryDialog extends ImporterDialog {
       return false;
     }
     needMem = process.getMemoryUsage();
-    availMem = getAvailableMemory();
+    availMem = process.getAvailableMemory();
     // NB: Prompt if dataset will leave too little memory available.
     return availMem - needMem < MINIMUM_MEMORY_PADDING;
   }
@@ -86,12 +86,4 @@ public class MemoryDialog extends ImporterDialog {
     return gd.wasOKed();
   }
 
-  // -- Helper methods --
-
-  private long getAvailableMemory() {
-    final Runtime r = Runtime.getRuntime();
-    final long usedMem = r.totalMemory() - r.freeMemory();
-    return r.maxMemory() - usedMem;
-  }
-
 }
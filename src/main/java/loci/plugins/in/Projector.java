@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.in;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.image.ColorModel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logic for projecting image planes as they are read.
+ *
+ * Each plane is folded into the running accumulator of its output plane,
+ * so memory use does not depend on the number of planes projected.
+ * A projector reuses one conversion buffer for all planes, so planes must
+ * be added from one thread at a time.
+ */
+public class Projector {
+
+  // -- Constants --
+
+  private static final int MAX = 0, MIN = 1, SUM = 2, AVERAGE = 3;
+
+  // -- Fields --
+
+  private final int method;
+
+  private final List<Accumulator> accumulators = new ArrayList<Accumulator>();
+
+  /** Reusable buffer for converting planes to 32-bit values. */
+  private FloatProcessor buffer;
+
+  // -- Constructor --
+
+  /**
+   * Creates a projector using the given method, one of the
+   * <code>ImporterOptions.PROJECTION_*</code> values.
+   */
+  public Projector(String method) {
+    if (ImporterOptions.PROJECTION_MAX.equals(method)) this.method = MAX;
+    else if (ImporterOptions.PROJECTION_MIN.equals(method)) this.method = MIN;
+    else if (ImporterOptions.PROJECTION_SUM.equals(method)) this.method = SUM;
+    else if (ImporterOptions.PROJECTION_AVERAGE.equals(method)) {
+      this.method = AVERAGE;
+    }
+    else {
+      throw new IllegalArgumentException("Invalid projection: " + method);
+    }
+  }
+
+  // -- Projector methods --
+
+  /** Folds the given plane into the output plane with the given index. */
+  public void add(int index, ImageProcessor ip) {
+    while (accumulators.size() <= index) accumulators.add(null);
+    final Accumulator acc = accumulators.get(index);
+    if (acc == null) accumulators.set(index, new Accumulator(ip));
+    else acc.add(ip);
+  }
+
+  /** Gets the number of output planes. */
+  public int getSize() {
+    return accumulators.size();
+  }
+
+  /**
+   * Gets the output plane with the given index. Sum and average projections
+   * of single channel planes are 32-bit; other projections keep the type
+   * and color model of the input planes.
+   */
+  public ImageProcessor getResult(int index) {
+    final Accumulator acc = accumulators.get(index);
+    return acc == null ? null : acc.getResult();
+  }
+
+  // -- Helper methods --
+
+  private void fold(float[] values, float[] pixels) {
+    switch (method) {
+      case MAX:
+        for (int i=0; i<values.length; i++) {
+          if (pixels[i] > values[i]) values[i] = pixels[i];
+        }
+        break;
+      case MIN:
+        for (int i=0; i<values.length; i++) {
+          if (pixels[i] < values[i]) values[i] = pixels[i];
+        }
+        break;
+      default:
+        for (int i=0; i<values.length; i++) values[i] += pixels[i];
+    }
+  }
+
+  // -- Helper classes --
+
+  /** Running projection of the input planes of one output plane. */
+  private class Accumulator {
+    private final ImageProcessor type;
+    private final ColorModel colorModel;
+    private final int width, height;
+    private final float[][] values;
+    private int count;
+
+    private Accumulator(ImageProcessor ip) {
+      width = ip.getWidth();
+      height = ip.getHeight();
+      type = ip.createProcessor(1, 1);
+      colorModel = ip.getColorModel();
+      values = new float[ip.getNChannels()][];
+      for (int c=0; c<values.length; c++) {
+        values[c] = new float[width * height];
+        buffer = ip.toFloat(c, buffer);
+        System.arraycopy(buffer.getPixels(), 0, values[c], 0, values[c].length);
+      }
+      count = 1;
+    }
+
+    private void add(ImageProcessor ip) {
+      for (int c=0; c<values.length; c++) {
+        buffer = ip.toFloat(c, buffer);
+        fold(values[c], (float[]) buffer.getPixels());
+      }
+      count++;
+    }
+
+    private ImageProcessor getResult() {
+      final float[][] result = new float[values.length][];
+      for (int c=0; c<values.length; c++) {
+        result[c] = values[c].clone();
+        if (method != AVERAGE) continue;
+        for (int i=0; i<result[c].length; i++) result[c][i] /= count;
+      }
+      if ((method == SUM || method == AVERAGE) && result.length == 1) {
+        return new FloatProcessor(width, height, result[0], null);
+      }
+      final ImageProcessor ip = type.createProcessor(width, height);
+      ip.setColorModel(colorModel);
+      for (int c=0; c<result.length; c++) {
+        ip.setPixels(c, new FloatProcessor(width, height, result[c], null));
+      }
+      return ip;
+    }
+  }
+
+}
@@ -160,7 +160,11 @@ public class SeriesDialog extends ImporterDialog implements ActionListener {
       loader = new ThumbLoader(thumbReader, p, gd);
     }
     gd.showDialog();
-    if (loader != null) loader.stop();
+    if (loader != null) {
+      loader.stop();
+      // the import reads from the same reader next
+      loader.awaitSharedReader();
+    }
     return !gd.wasCanceled();
   }
 
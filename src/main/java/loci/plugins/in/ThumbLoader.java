@@ -27,38 +27,83 @@
 
 package loci.plugins.in;
 
+import java.awt.Component;
 import java.awt.Dialog;
+import java.awt.IllegalComponentStateException;
 import java.awt.Panel;
+import java.awt.Rectangle;
+import java.awt.ScrollPane;
+import java.awt.Window;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 
 import loci.common.DebugTools;
-import loci.formats.CoreMetadata;
+import loci.formats.ChannelSeparator;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
 import loci.formats.gui.AWTImageTools;
 import loci.formats.gui.BufferedImageReader;
+import loci.formats.in.MetadataLevel;
 import loci.plugins.BF;
+import loci.plugins.util.LociPrefs;
+import loci.plugins.util.ThumbnailCache;
 
 /**
  * Loads thumbnails for Bio-Formats Importer
- * series chooser in a separate thread.
+ * series chooser in separate threads.
+ *
+ * The first loader thread starts on the given reader right away, while
+ * separate readers on the dataset are initialized in the background; the
+ * other threads decode thumbnails in parallel with their own readers, and
+ * the first thread moves to a separate reader as soon as one is ready.
+ * Series whose panels are currently visible in the dialog are loaded first.
+ * Thumbnails which finish decoding after the loader is stopped are
+ * discarded.
  */
 public class ThumbLoader implements Runnable {
 
+  // -- Constants --
+
+  /** Maximum number of threads used to load thumbnails. */
+  private static final int MAX_THREADS = 4;
+
+  /** Marks the replacement for the given reader as taken or abandoned. */
+  private static final Object TAKEN = new Object();
+
   // -- Fields --
 
   private BufferedImageReader ir;
   private Panel[] p;
   private Dialog dialog;
-  private boolean stop;
-  private Thread loader;
+  private volatile boolean stop;
+  private ExecutorService loader;
+
+  /** Series indices, smallest planes first. */
+  private int[] order;
+
+  /** Whether each series has been assigned to a loader thread. */
+  private boolean[] claimed;
+
+  /** Whether a loader thread has started on the given reader. */
+  private final AtomicBoolean sharedStarted = new AtomicBoolean();
+
+  /**
+   * Separate reader replacing the given one in the first loader thread:
+   * null until initialized, then the reader, or {@link #TAKEN}.
+   */
+  private final AtomicReference<Object> replacement =
+    new AtomicReference<Object>();
 
   // -- Constructor --
 
@@ -72,93 +117,249 @@ public class ThumbLoader implements Runnable {
     this.ir = BufferedImageReader.makeBufferedImageReader(ir);
     this.p = p;
     this.dialog = dialog;
-    loader = new Thread(this, "BioFormats-ThumbLoader");
-    loader.start();
+
+    // find image plane for each series and sort by size
+    BF.status(false, "Gathering series information");
+    int seriesCount = this.ir.getSeriesCount();
+    int series = this.ir.getSeries();
+    SeriesInfo[] info = new SeriesInfo[seriesCount];
+    for (int i=0; i<seriesCount; i++) {
+      this.ir.setSeries(i);
+      info[i] = new SeriesInfo(i, this.ir.getSizeX() * this.ir.getSizeY());
+    }
+    this.ir.setSeries(series);
+    Arrays.sort(info);
+    order = new int[seriesCount];
+    for (int i=0; i<seriesCount; i++) order[i] = info[i].index;
+    claimed = new boolean[seriesCount];
+
+    int threads = Math.max(1, Math.min(seriesCount,
+      Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+    final AtomicInteger threadNumber = new AtomicInteger();
+    loader = Executors.newFixedThreadPool(threads + 1,
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r,
+            "BioFormats-ThumbLoader-" + threadNumber.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    for (int i=0; i<threads; i++) loader.execute(this);
+    loader.execute(new Runnable() {
+      @Override
+      public void run() {
+        BufferedImageReader r = stop ? null : createReaderQuietly();
+        if (r != null && !replacement.compareAndSet(null, r)) close(r);
+      }
+    });
+    loader.shutdown();
   }
 
   // -- ThumbLoader methods --
 
-  /** Instructs the thumbnail loader to stop loading thumbnails. */
+  /**
+   * Instructs the thumbnail loader to stop loading thumbnails, without
+   * waiting. Outstanding series are abandoned immediately; thumbnails
+   * which are still being decoded are discarded when they finish.
+   * @see #awaitSharedReader()
+   */
   public void stop() {
     if (loader == null) return;
     stop = true;
     BF.status(false, "Canceling thumbnail generation");
-    try {
-      loader.join();
-      loader = null;
-    }
-    catch (InterruptedException exc) {
-      exc.printStackTrace();
-    }
+    loader = null;
     BF.status(false, "");
   }
 
+  /**
+   * Waits until no loader thread is decoding a thumbnail with the given
+   * reader, so that it can be used again. This only waits when the loader
+   * was stopped before any separate reader was ready.
+   */
+  public void awaitSharedReader() {
+    synchronized (ir) { }
+  }
+
   // -- Runnable methods --
 
-  /** Does the work of loading the thumbnails. */
+  /** Does the work of loading the thumbnails, in each loader thread. */
   @Override
   public void run() {
-    BF.status(false, "Gathering series information");
-    int seriesCount = ir.getSeriesCount();
+    // the first thread starts on the given reader; the others first
+    // initialize a separate one
+    boolean shared = sharedStarted.compareAndSet(false, true);
+    BufferedImageReader reader = shared ? ir : createReaderQuietly();
+    try {
+      while (!stop) {
+        if (shared) {
+          Object r = replacement.get();
+          if (r instanceof BufferedImageReader &&
+            replacement.compareAndSet(r, TAKEN))
+          {
+            reader = (BufferedImageReader) r;
+            shared = false;
+          }
+        }
+        int series = nextSeries();
+        if (series < 0) break;
+        if (reader != null && !shared) {
+          loadThumb(reader, series);
+        }
+        else {
+          synchronized (ir) {
+            if (stop) break;
+            loadThumb(ir, series);
+          }
+        }
+        if (dialog != null && !stop) dialog.validate();
+      }
+    }
+    finally {
+      if (reader != null && reader != ir) close(reader);
+      if (shared) {
+        Object r = replacement.getAndSet(TAKEN);
+        if (r instanceof BufferedImageReader) close((BufferedImageReader) r);
+      }
+    }
+  }
 
-    // find image plane for each series and sort by size
-    SeriesInfo[] info = new SeriesInfo[seriesCount];
-    for (int i=0; i<seriesCount; i++) {
-      if (stop) return;
-      ir.setSeries(i);
-      info[i] = new SeriesInfo(i, ir.getSizeX() * ir.getSizeY());
+  // -- Helper methods --
+
+  /**
+   * Gets the next series for which to load a thumbnail: a series whose panel
+   * is visible if there is one, otherwise the smallest remaining series.
+   * @return the series index, or -1 if all series have been assigned
+   */
+  private synchronized int nextSeries() {
+    int next = -1;
+    for (int i=0; i<order.length; i++) {
+      int series = order[i];
+      if (claimed[series]) continue;
+      if (next < 0) next = series;
+      if (isVisible(p[series])) {
+        next = series;
+        break;
+      }
     }
-    if (stop) return;
-    Arrays.sort(info);
+    if (next >= 0) claimed[next] = true;
+    return next;
+  }
 
-    // open each thumbnail, fastest/smallest first
-    for (int i=0; i<seriesCount; i++) {
-      if (stop) return;
-      final int ii = info[i].index;
-      loadThumb(ir, ii, p[ii], false);
-      if (dialog != null) dialog.validate();
+  /** Returns true if the given panel lies within the visible dialog area. */
+  private static boolean isVisible(Component c) {
+    if (c == null || !c.isShowing()) return false;
+    Component viewport = c.getParent();
+    while (viewport != null && !(viewport instanceof ScrollPane) &&
+      !(viewport instanceof Window))
+    {
+      viewport = viewport.getParent();
+    }
+    if (viewport == null) return true;
+    try {
+      Rectangle view = new Rectangle(viewport.getLocationOnScreen(),
+        viewport.getSize());
+      return view.intersects(new Rectangle(c.getLocationOnScreen(),
+        c.getSize()));
+    }
+    catch (IllegalComponentStateException e) {
+      return false;
     }
   }
 
-  // -- Helper methods --
+  /**
+   * Initializes a separate reader on the dataset, with minimal metadata.
+   * @return the reader, or null if its series do not match the shared reader
+   */
+  private BufferedImageReader createReader()
+    throws FormatException, IOException
+  {
+    String id = ir.getCurrentFile();
+    if (id == null) return null;
+    IFormatReader r = new ChannelSeparator(LociPrefs.makeImageReader());
+    r.getMetadataOptions().setMetadataLevel(MetadataLevel.MINIMUM);
+    r.setGroupFiles(ir.isGroupFiles());
+    r.setId(id);
+    if (r.getSeriesCount() != ir.getSeriesCount()) {
+      r.close();
+      return null;
+    }
+    return BufferedImageReader.makeBufferedImageReader(r);
+  }
+
+  /** Initializes a separate reader, or returns null if that fails. */
+  private BufferedImageReader createReaderQuietly() {
+    try {
+      return createReader();
+    }
+    catch (FormatException e) {
+      BF.debug(DebugTools.getStackTrace(e));
+    }
+    catch (IOException e) {
+      BF.debug(DebugTools.getStackTrace(e));
+    }
+    return null;
+  }
+
+  private static void close(BufferedImageReader reader) {
+    try {
+      reader.close();
+    }
+    catch (IOException e) {
+      BF.debug(DebugTools.getStackTrace(e));
+    }
+  }
+
+  /** Loads a thumbnail into its panel, unless the loader has been stopped. */
+  private void loadThumb(BufferedImageReader thumbReader, int series) {
+    JLabel label = readThumb(thumbReader, series, false);
+    if (label == null || stop) return;
+    Panel panel = p[series];
+    panel.removeAll();
+    panel.add(label);
+  }
 
   public static void loadThumb(BufferedImageReader thumbReader,
     int series, Panel panel, boolean quiet)
+  {
+    JLabel label = readThumb(thumbReader, series, quiet);
+    if (label == null) return;
+    panel.removeAll();
+    panel.add(label);
+  }
+
+  /**
+   * Reads the thumbnail of the given series.
+   * @return a label displaying the thumbnail, or null if it cannot be read
+   */
+  private static JLabel readThumb(BufferedImageReader thumbReader,
+    int series, boolean quiet)
   {
     BF.status(quiet, "Reading thumbnail for series #" + (series + 1));
-    // open middle image thumbnail in smallest pyramid resolution
-    List<CoreMetadata> core = thumbReader.getCoreMetadataList();
-    int index = series;
-    for (int i=0; i<=index; i++) {
-      if (core.get(i).resolutionCount > 1 &&
-        i + core.get(i).resolutionCount > index)
-      {
-        index = i + core.get(i).resolutionCount - 1;
-        break;
-      }
-    }
-    thumbReader.setSeries(index);
+    // open middle image thumbnail; the smallest pyramid resolution
+    // that is large enough is chosen by ThumbnailTools
+    thumbReader.setSeries(series);
 
     int z = thumbReader.getSizeZ() / 2;
     int t = thumbReader.getSizeT() / 2;
     int ndx = thumbReader.getIndex(z, 0, t);
     Exception exc = null;
     try {
-      BufferedImage thumb = thumbReader.openThumbImage(ndx);
+      byte[] bytes = ThumbnailCache.openThumbBytes(thumbReader, ndx);
+      BufferedImage thumb = AWTImageTools.openImage(bytes, thumbReader,
+        thumbReader.getThumbSizeX(), thumbReader.getThumbSizeY());
       // autoscaling floating point thumbnails typically results in a black image
       if (!FormatTools.isFloatingPoint(thumbReader.getPixelType())) {
         thumb = AWTImageTools.autoscale(thumb);
       }
-      ImageIcon icon = new ImageIcon(thumb);
-      panel.removeAll();
-      panel.add(new JLabel(icon));
+      return new JLabel(new ImageIcon(thumb));
     }
     catch (FormatException e) { exc = e; }
     catch (IOException e) { exc = e; }
-    if (exc != null) {
-      BF.warn(quiet, "Error loading thumbnail for series #" + (series + 1));
-      BF.debug(DebugTools.getStackTrace(exc));
-    }
+    BF.warn(quiet, "Error loading thumbnail for series #" + (series + 1));
+    BF.debug(DebugTools.getStackTrace(exc));
+    return null;
   }
 
   // -- Helper classes --
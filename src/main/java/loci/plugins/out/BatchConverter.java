@@ -0,0 +1,351 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.out;
+
+import ij.ImagePlus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import loci.common.DebugTools;
+import loci.formats.FormatException;
+import loci.formats.ImageReader;
+import loci.formats.in.DefaultMetadataOptions;
+import loci.formats.in.MetadataLevel;
+import loci.plugins.LociExporter;
+import loci.plugins.in.ImagePlusReader;
+import loci.plugins.in.ImportProcess;
+import loci.plugins.in.ImporterOptions;
+
+/**
+ * Command line tool for converting a directory tree of image files without
+ * any user interface. Each file is read through the importer's reader chain
+ * ({@link ImportProcess} and {@link ImagePlusReader}) as a virtual stack, and
+ * written using the {@link Exporter}'s plane handling.
+ *
+ * Files are first grouped into datasets on a single thread, so that the
+ * companion files of a multi-file dataset are converted once, as part of
+ * their dataset. Datasets are then converted in parallel using a fixed size
+ * pool of worker threads. Outputs that are newer than every file of their
+ * dataset are skipped.
+ */
+public class BatchConverter {
+
+  // -- Constants --
+
+  private static final String DEFAULT_EXTENSION = ".ome.tif";
+
+  // -- Fields --
+
+  private File inputDir;
+  private File outputDir;
+  private String extension = DEFAULT_EXTENSION;
+  private String compression;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private boolean overwrite;
+
+  // -- Constructor --
+
+  public BatchConverter(File inputDir, File outputDir) {
+    this.inputDir = inputDir;
+    this.outputDir = outputDir;
+  }
+
+  // -- BatchConverter API methods --
+
+  /** Sets the extension (e.g. ".ome.tif") that determines the output format. */
+  public void setExtension(String extension) {
+    this.extension = extension.startsWith(".") ? extension : "." + extension;
+  }
+
+  /** Sets the compression type passed to the writer, or null for default. */
+  public void setCompression(String compression) {
+    this.compression = compression;
+  }
+
+  /** Sets the number of files converted concurrently. */
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /** Sets whether outputs are rewritten even if they are up to date. */
+  public void setOverwrite(boolean overwrite) {
+    this.overwrite = overwrite;
+  }
+
+  /**
+   * Converts every readable file below the input directory.
+   * @return the number of files which could not be converted
+   */
+  public int run() throws InterruptedException {
+    List<File> files = new ArrayList<File>();
+    findFiles(inputDir, new ImageReader(), files);
+    long start = System.currentTimeMillis();
+    final Map<File, Long> datasets = findDatasets(files);
+    files = new ArrayList<File>(datasets.keySet());
+    log("Found " + files.size() + " dataset(s) to convert using " +
+      threads + " thread(s)");
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    try {
+      for (final File file : files) {
+        results.add(pool.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            return convert(file, datasets.get(file));
+          }
+        }));
+      }
+
+      int failed = 0;
+      for (int i=0; i<results.size(); i++) {
+        try {
+          if (!results.get(i).get()) failed++;
+        }
+        catch (ExecutionException e) {
+          failed++;
+          log("Failed to convert " + files.get(i) + ": " + e.getCause());
+        }
+      }
+      log("Done in " + seconds(System.currentTimeMillis() - start) +
+        " s; " + failed + " failure(s)");
+      return failed;
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Groups the given files into datasets, each represented by the first of
+   * its files. Files used by an earlier dataset are not datasets of their
+   * own, whether or not that dataset needs converting.
+   * @return the last modification time of each dataset's files, by dataset
+   */
+  private static Map<File, Long> findDatasets(List<File> files) {
+    Map<File, Long> datasets = new LinkedHashMap<File, Long>();
+    Set<String> usedFiles = new HashSet<String>();
+    ImageReader reader = new ImageReader();
+    reader.setMetadataOptions(
+      new DefaultMetadataOptions(MetadataLevel.MINIMUM));
+    for (File file : files) {
+      String path = file.getAbsolutePath();
+      if (usedFiles.contains(path)) continue;
+      long modified = file.lastModified();
+      try {
+        reader.setId(path);
+        for (String used : reader.getUsedFiles()) {
+          File f = new File(used).getAbsoluteFile();
+          usedFiles.add(f.getPath());
+          modified = Math.max(modified, f.lastModified());
+        }
+        reader.close();
+      }
+      catch (FormatException e) {
+        // the error is reported when the dataset is converted
+      }
+      catch (IOException e) {
+        // the error is reported when the dataset is converted
+      }
+      datasets.put(file, modified);
+    }
+    return datasets;
+  }
+
+  /**
+   * Converts a single dataset.
+   * @param modified last modification time of the dataset's files
+   * @return false if the dataset could not be converted
+   */
+  private boolean convert(File file, long modified)
+    throws FormatException, IOException
+  {
+    String path = file.getAbsolutePath();
+    String base = getOutputBase(file);
+    if (!overwrite && (isUpToDate(modified, new File(base + extension)) ||
+      isUpToDate(modified, new File(base + "_S0" + extension))))
+    {
+      log("Skipping " + path + " (up to date)");
+      return true;
+    }
+
+    long start = System.currentTimeMillis();
+
+    ImporterOptions options = new ImporterOptions();
+    options.setId(path);
+    options.setQuiet(true);
+    options.setWindowless(true);
+    options.setVirtual(true);
+    options.setOpenAllSeries(true);
+    options.setAutoscale(false);
+
+    ImportProcess process = new ImportProcess(options);
+    if (!process.execute()) {
+      log("Failed to convert " + path + ": import canceled");
+      return false;
+    }
+
+    long bytes = 0;
+    boolean success = true;
+    try {
+      ImagePlus[] imps = new ImagePlusReader(process).openImagePlus();
+      for (int i=0; i<imps.length; i++) {
+        File out = new File(imps.length == 1 ?
+          base + extension : base + "_S" + i + extension);
+        out.getParentFile().mkdirs();
+        if (out.exists()) out.delete();
+
+        // the exporter reports its own errors, so check the output instead
+        export(imps[i], out);
+        if (!out.exists()) {
+          log("Failed to write " + out);
+          success = false;
+        }
+        bytes += (long) imps[i].getWidth() * imps[i].getHeight() *
+          imps[i].getBytesPerPixel() * imps[i].getStackSize();
+      }
+    }
+    finally {
+      process.getVirtualReader().setRefCount(0);
+      process.getReader().close();
+    }
+
+    long elapsed = System.currentTimeMillis() - start;
+    double mb = bytes / (1024.0 * 1024.0);
+    log("Converted " + path + ": " + String.format("%.1f", mb) + " MB in " +
+      seconds(elapsed) + " s (" +
+      String.format("%.1f", elapsed == 0 ? 0 : mb * 1000 / elapsed) +
+      " MB/s)");
+    return success;
+  }
+
+  /** Writes the given image using the exporter, without any dialogs. */
+  private void export(ImagePlus imp, File out) {
+    LociExporter plugin = new LociExporter();
+    StringBuilder arg = new StringBuilder();
+    arg.append("outfile=[" + out.getAbsolutePath() + "]");
+    arg.append(" windowless=true splitZ=false splitC=false splitT=false");
+    arg.append(" padded=false saveRoi=false");
+    if (compression != null) {
+      arg.append(" compression=[" + compression + "]");
+    }
+    plugin.arg = arg.toString();
+    new Exporter(plugin, imp).run();
+  }
+
+  /** Gets the output path for the given input file, minus its extension. */
+  private String getOutputBase(File file) {
+    String inputRoot = inputDir.getAbsolutePath();
+    String relative = file.getAbsolutePath().substring(inputRoot.length());
+    int dot = relative.lastIndexOf(".");
+    if (dot > relative.lastIndexOf(File.separator)) {
+      relative = relative.substring(0, dot);
+    }
+    return new File(outputDir, relative).getAbsolutePath();
+  }
+
+  private static boolean isUpToDate(long modified, File output) {
+    return output.exists() && output.lastModified() >= modified;
+  }
+
+  /** Recursively collects files with a known extension. */
+  private static void findFiles(File dir, ImageReader reader,
+    List<File> files)
+  {
+    File[] list = dir.listFiles();
+    if (list == null) return;
+    Arrays.sort(list);
+    for (File f : list) {
+      if (f.isDirectory()) findFiles(f, reader, files);
+      else if (reader.isThisType(f.getAbsolutePath(), false)) files.add(f);
+    }
+  }
+
+  private static String seconds(long ms) {
+    return String.format("%.2f", ms / 1000.0);
+  }
+
+  private static void log(String msg) {
+    synchronized (System.out) {
+      System.out.println(msg);
+    }
+  }
+
+  // -- Main method --
+
+  public static void main(String[] args) throws InterruptedException {
+    DebugTools.enableLogging("WARN");
+    String in = null, out = null;
+    String extension = null, compression = null;
+    int threads = -1;
+    boolean overwrite = false;
+    for (int i=0; i<args.length; i++) {
+      if (args[i].equals("-threads") && i < args.length - 1) {
+        threads = Integer.parseInt(args[++i]);
+      }
+      else if (args[i].equals("-extension") && i < args.length - 1) {
+        extension = args[++i];
+      }
+      else if (args[i].equals("-compression") && i < args.length - 1) {
+        compression = args[++i];
+      }
+      else if (args[i].equals("-overwrite")) overwrite = true;
+      else if (in == null) in = args[i];
+      else if (out == null) out = args[i];
+    }
+    if (in == null || out == null || !new File(in).isDirectory()) {
+      System.err.println("Usage: java " + BatchConverter.class.getName() +
+        " [-threads n] [-extension .ome.tif] [-compression type]" +
+        " [-overwrite] <input directory> <output directory>");
+      System.exit(2);
+    }
+
+    BatchConverter converter = new BatchConverter(new File(in), new File(out));
+    if (threads > 0) converter.setThreads(threads);
+    if (extension != null) converter.setExtension(extension);
+    converter.setCompression(compression);
+    converter.setOverwrite(overwrite);
+    System.exit(converter.run() == 0 ? 0 : 1);
+  }
+
+}
@@ -58,6 +58,7 @@ import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileFilter;
 
 import loci.common.DataTools;
+import loci.common.Region;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
 import loci.common.services.ServiceFactory;
@@ -71,9 +72,12 @@ import loci.formats.gui.ExtensionFileFilter;
 import loci.formats.gui.GUITools;
 import loci.formats.gui.Index16ColorModel;
 import loci.formats.meta.IMetadata;
+import loci.formats.out.TiffWriter;
 import loci.formats.services.OMEXMLService;
 import loci.plugins.BF;
 import loci.plugins.LociExporter;
+import loci.plugins.util.BFVirtualStack;
+import loci.plugins.util.ImageProcessorReader;
 import loci.plugins.util.ROIHandler;
 import loci.plugins.util.RecordedImageProcessor;
 import loci.plugins.util.WindowTools;
@@ -97,6 +101,9 @@ public class Exporter {
 
     private static final String ORDER = "XYCZT";
 
+    /** Maximum number of bytes read at once when copying planes directly. */
+    private static final int MAX_STRIP_BYTES = 32 * 1024 * 1024;
+
     // -- Fields --
 
     /** Current stack. */
@@ -591,10 +598,16 @@ public class Exporter {
                 }
             }
 
+            BFVirtualStack rawStack = null;
+            if (channels == 1 && !applyCalibrationFunction) {
+                rawStack = getUnmodifiedStack(imp, ptype);
+            }
+
             // prompt for options
 
             String[] codecs = w.getCompressionTypes();
-            ImageProcessor proc = imp.getImageStack().getProcessor(1);
+            ImageProcessor proc = rawStack == null ?
+                    imp.getImageStack().getProcessor(1) : imp.getProcessor();
             Image firstImage = proc.createImage();
             firstImage = AWTImageTools.makeBuffered(firstImage, proc.getColorModel());
             int thisType = AWTImageTools.getPixelType((BufferedImage) firstImage);
@@ -697,7 +710,9 @@ public class Exporter {
                     BF.progress(false, i, size);
                 }
                 else BF.status(false, "Saving image");
-                proc = is.getProcessor(i + 1);
+                if (rawStack == null) {
+                    proc = is.getProcessor(i + 1);
+                }
 
                 if (proc instanceof RecordedImageProcessor) {
                     proc = ((RecordedImageProcessor) proc).getChild();
@@ -706,7 +721,11 @@ public class Exporter {
                 int x = proc.getWidth();
                 int y = proc.getHeight();
 
-                if (proc instanceof ByteProcessor) {
+                if (rawStack != null) {
+                    // pixels are copied straight from the reader below
+                    plane = null;
+                }
+                else if (proc instanceof ByteProcessor) {
                     if (applyCalibrationFunction) {
                       // don't alter 'pixels' directly as that will
                       // affect the open ImagePlus
@@ -818,7 +837,13 @@ public class Exporter {
                     else if (!proc.isDefaultLut()) {
                         w.setColorModel(proc.getColorModel());
                     }
-                    w.saveBytes(no[fileIndex]++, plane);
+                    if (rawStack != null) {
+                        copyPlane(rawStack, i + 1, w, no[fileIndex]++,
+                                littleEndian);
+                    }
+                    else {
+                        w.saveBytes(no[fileIndex]++, plane);
+                    }
                 }
             }
             w.close();
@@ -831,4 +856,89 @@ public class Exporter {
         }
     }
 
+    // -- Helper methods --
+
+    /**
+     * Returns the image's stack if it is a Bio-Formats virtual stack whose
+     * planes can be copied byte-for-byte from the source reader, or null if
+     * each plane must be converted from its ImageProcessor.
+     */
+    private BFVirtualStack getUnmodifiedStack(ImagePlus imp, int ptype) {
+        if (!(imp.getStack() instanceof BFVirtualStack)) return null;
+        BFVirtualStack stack = (BFVirtualStack) imp.getStack();
+        if (!stack.isUnmodified()) return null;
+        synchronized (stack) {
+            ImageProcessorReader r = stack.getReader();
+            r.setSeries(stack.getSeries());
+            // cropped stacks are copied region by region, so compare
+            // against the stack's dimensions rather than the reader's
+            if (r.getPixelType() != ptype || r.getRGBChannelCount() != 1 ||
+                    stack.getWidth() != imp.getWidth() ||
+                    stack.getHeight() != imp.getHeight())
+            {
+                return null;
+            }
+            Region crop = stack.getCropRegion();
+            if (crop != null && (crop.x < 0 || crop.y < 0 ||
+                    crop.x + crop.width > r.getSizeX() ||
+                    crop.y + crop.height > r.getSizeY()))
+            {
+                return null;
+            }
+        }
+        return stack;
+    }
+
+    /**
+     * Copies one slice of an unmodified virtual stack to the writer.
+     * Pixels are read from the source reader, bypassing the plane cache.
+     * TIFF writers (including OME-TIFF) receive large planes in strips of
+     * whole rows, so that they are never fully decoded; other writers do
+     * not support saving tiles and always receive whole planes.
+     */
+    private void copyPlane(BFVirtualStack stack, int slice, IFormatWriter w,
+            int no, boolean littleEndian) throws FormatException, IOException
+    {
+        ImageProcessorReader r = stack.getReader();
+        int sizeX, sizeY, bpp, tileHeight;
+        boolean swap;
+        synchronized (stack) {
+            r.setSeries(stack.getSeries());
+            // the stack may only cover a cropped region of each plane
+            sizeX = stack.getWidth();
+            sizeY = stack.getHeight();
+            bpp = FormatTools.getBytesPerPixel(r.getPixelType());
+            swap = bpp > 1 && r.isLittleEndian() != littleEndian;
+            tileHeight = r.getOptimalTileHeight();
+        }
+
+        int rows = sizeY;
+        if (w instanceof TiffWriter) {
+            rows = Math.max(1, Math.min(sizeY, MAX_STRIP_BYTES / (sizeX * bpp)));
+        }
+        if (rows < sizeY && tileHeight > 0 && rows > tileHeight) {
+            rows -= rows % tileHeight;
+        }
+
+        for (int y=0; y<sizeY; y+=rows) {
+            int h = Math.min(rows, sizeY - y);
+            byte[] buf = stack.openBytes(slice, 0, y, sizeX, h);
+            if (swap) {
+                for (int p=0; p<buf.length; p+=bpp) {
+                    for (int b=0; b<bpp/2; b++) {
+                        byte tmp = buf[p + b];
+                        buf[p + b] = buf[p + bpp - b - 1];
+                        buf[p + bpp - b - 1] = tmp;
+                    }
+                }
+            }
+            if (h == sizeY) {
+                w.saveBytes(no, buf);
+            }
+            else {
+                w.saveBytes(no, buf, 0, y, sizeX, h);
+            }
+        }
+    }
+
 }
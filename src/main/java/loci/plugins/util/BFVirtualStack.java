@@ -33,13 +33,18 @@ import ij.process.ImageProcessor;
 import java.awt.image.IndexColorModel;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import loci.common.Region;
 import loci.formats.ChannelMerger;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
 import loci.formats.Modulo;
+import loci.formats.ReaderWrapper;
 import loci.formats.cache.Cache;
 import loci.formats.cache.CacheException;
 import loci.formats.cache.CacheStrategy;
@@ -75,6 +80,35 @@ public class BFVirtualStack extends VirtualStack {
 
   private float[] calibrationTable;
 
+  /** Region of each plane to read, or null for the whole plane. */
+  private Region region;
+
+  /** Whether all channels at a Z/T position are read together. */
+  private boolean batchChannels;
+
+  /** Whether channel batches were switched on by the recent access pattern. */
+  private boolean detectedBatch;
+
+  /** Z/C/T position of the most recently requested plane. */
+  private int[] lastPos;
+
+  /** Planes read by the most recent channel batch, by reader plane index. */
+  private final Map<Integer, ImageProcessor> batch =
+    new HashMap<Integer, ImageProcessor>();
+
+  /** Reader plane indexes included in this stack, or null for all. */
+  private BitSet selectedPlanes;
+
+  /** Dataset whose planes are shared through the {@link PlaneCache}. */
+  private String cacheId;
+  private boolean released;
+
+  /** Source of the planes prefetched into {@link #cache}. */
+  private ImageProcessorSource source;
+
+  /** Transforms applied to each plane as it is read, or null for none. */
+  private List<PlaneTransform> transforms;
+
   // -- Static utility methods --
 
   protected static int getWidth(IFormatReader r, String path, int series)
@@ -97,10 +131,27 @@ public class BFVirtualStack extends VirtualStack {
     boolean merge, boolean record)
     throws FormatException, IOException, CacheException
   {
-    super(getWidth(r, path, r.getSeries()), getHeight(r, path, r.getSeries()),
+    this(path, r, colorize, merge, record, null);
+  }
+
+  /**
+   * Creates a virtual stack which reads only the given region of each
+   * plane; a null region reads whole planes.
+   */
+  public BFVirtualStack(String path, IFormatReader r, boolean colorize,
+    boolean merge, boolean record, Region region)
+    throws FormatException, IOException, CacheException
+  {
+    super(region == null ? getWidth(r, path, r.getSeries()) : region.width,
+      region == null ? getHeight(r, path, r.getSeries()) : region.height,
       null, path);
     reader = new ImageProcessorReader(r);
     id = path;
+    if (region != null && (region.x != 0 || region.y != 0 ||
+      region.width != r.getSizeX() || region.height != r.getSizeY()))
+    {
+      this.region = region;
+    }
 
     this.colorize = colorize;
     this.merge = merge && !r.isIndexed();
@@ -123,7 +174,10 @@ public class BFVirtualStack extends VirtualStack {
     len[len.length - 1] = r.getSizeT();
     CacheStrategy strategy = new CrosshairStrategy(len);
 
-    cache = new Cache(strategy, new ImageProcessorSource(r), true);
+    source = new ImageProcessorSource(r, this.region);
+    cache = new Cache(strategy, source, true);
+    cacheId = reader.getCurrentFile();
+    PlaneCache.retain(cacheId);
 
     methodStacks = new ArrayList<List<MethodEntry>>();
     for (int i=0; i<r.getImageCount(); i++) {
@@ -150,6 +204,101 @@ public class BFVirtualStack extends VirtualStack {
 
   public void setPlaneIndexes(int[] planeIndexes) {
     this.planeIndexes = planeIndexes;
+    selectedPlanes = null;
+    if (planeIndexes != null) {
+      selectedPlanes = new BitSet();
+      for (int index : planeIndexes) selectedPlanes.set(index);
+    }
+  }
+
+  public int getSeries() { return series; }
+
+  /**
+   * Sets whether a plane miss reads every channel at the same Z/T position,
+   * as needed to draw a composite image. Otherwise, batches are used only
+   * while different channels of one position are requested one after
+   * another, and stop again as soon as a single channel is browsed.
+   */
+  public synchronized void setBatchChannels(boolean batchChannels) {
+    this.batchChannels = batchChannels;
+    if (!batchChannels) {
+      detectedBatch = false;
+      batch.clear();
+    }
+  }
+
+  /**
+   * Sets the transforms applied to each plane as it is read, before it is
+   * cached. Should be called before any plane is obtained.
+   */
+  public synchronized void setPlaneTransforms(
+    List<PlaneTransform> transforms)
+  {
+    this.transforms = transforms == null || transforms.isEmpty() ? null :
+      new ArrayList<PlaneTransform>(transforms);
+    source.setPlaneTransforms(this.transforms);
+  }
+
+  /** Gets the transforms applied to each plane, or null for none. */
+  public List<PlaneTransform> getPlaneTransforms() { return transforms; }
+
+  /** Gets the region read from each plane, or null for whole planes. */
+  public Region getCropRegion() { return region; }
+
+  /** Gets the reader plane index backing the given 1-based slice number. */
+  public int getPlaneIndex(int n) {
+    return planeIndexes == null ? n - 1 : planeIndexes[n - 1];
+  }
+
+  /**
+   * Returns true if any recorded operations have been applied to the
+   * planes of this stack, i.e. if the pixels obtained through
+   * {@link #getProcessor(int)} may differ from the bytes in the source file.
+   */
+  public synchronized boolean hasRecordedEdits() {
+    if (currentProcessor != null &&
+      currentProcessor.getMethodStack().size() > 1)
+    {
+      return true;
+    }
+    for (List<MethodEntry> stack : methodStacks) {
+      if (stack.size() > 0) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the slices of this stack can be copied byte-for-byte
+   * from the underlying reader, without any channel merging, colorizing,
+   * plane transforms or recorded operations.
+   */
+  public boolean isUnmodified() {
+    return !merge && !colorize && transforms == null && !hasRecordedEdits();
+  }
+
+  /**
+   * Reads the given region of the given 1-based slice directly from the
+   * underlying reader, bypassing the plane cache and any recorded operations.
+   */
+  public synchronized byte[] openBytes(int n, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    reader.setSeries(series);
+    if (region != null) {
+      x += region.x;
+      y += region.y;
+    }
+    return reader.openBytes(getPlaneIndex(n), x, y, w, h);
+  }
+
+  /**
+   * Releases this stack's reference to the shared plane cache. The stack
+   * should not be used afterwards.
+   */
+  public synchronized void close() {
+    if (released) return;
+    released = true;
+    PlaneCache.release(cacheId);
   }
 
   // -- VirtualStack API methods --
@@ -165,14 +314,17 @@ public class BFVirtualStack extends VirtualStack {
         methodStacks.get(currentSlice).addAll(currentStack);
       }
     }
-    int sliceIndex = planeIndexes == null ? n - 1 : planeIndexes[n - 1];
+    int sliceIndex = getPlaneIndex(n);
     int[] pos = reader.getZCTCoords(sliceIndex);
     if (merge) pos = new ChannelMerger(reader).getZCTCoords(sliceIndex);
     int[] cachePos = FormatTools.rasterToPosition(len, sliceIndex);
     ImageProcessor ip = null;
+    boolean composite = !merge && detectCompositeAccess(pos);
 
+    // the cache holds planes shared with the plane cache; copy them
     try {
       ip = (ImageProcessor) cache.getObject(cachePos);
+      if (ip != null) ip = ip.duplicate();
       cache.setCurrentPos(cachePos);
     }
     catch (CacheException exc) {
@@ -182,7 +334,8 @@ public class BFVirtualStack extends VirtualStack {
     // cache missed
     try {
       if (ip == null) {
-        ip = reader.openProcessors(reader.getIndex(pos[0], pos[1], pos[2]))[0];
+        int index = reader.getIndex(pos[0], pos[1], pos[2]);
+        ip = composite ? openChannels(pos, index) : openProcessor(index);
       }
     }
     catch (FormatException exc) {
@@ -219,6 +372,9 @@ public class BFVirtualStack extends VirtualStack {
         try {
           cachePos[0] = channel;
           otherChannels[i] = (ImageProcessor) cache.getObject(cachePos);
+          if (otherChannels[i] != null) {
+            otherChannels[i] = otherChannels[i].duplicate();
+          }
         }
         catch (CacheException exc) {
           exc.printStackTrace();
@@ -226,7 +382,7 @@ public class BFVirtualStack extends VirtualStack {
         if (otherChannels[i] == null) {
           try {
             int index = reader.getIndex(pos[0], channel, pos[2]);
-            otherChannels[i] = reader.openProcessors(index)[0];
+            otherChannels[i] = openProcessor(index);
           }
           catch (FormatException exc) {
             exc.printStackTrace();
@@ -265,12 +421,14 @@ public class BFVirtualStack extends VirtualStack {
 
   @Override
   public int getWidth() {
+    if (region != null) return region.width;
     reader.setSeries(series);
     return reader.getSizeX();
   }
 
   @Override
   public int getHeight() {
+    if (region != null) return region.height;
     reader.setSeries(series);
     return reader.getSizeY();
   }
@@ -283,4 +441,71 @@ public class BFVirtualStack extends VirtualStack {
     return planeIndexes == null ? reader.getImageCount() : planeIndexes.length;
   }
 
+  // -- Helper methods --
+
+  /**
+   * Records the requested position, and checks whether channels should be
+   * read in batches. Switching channel at the same Z/T position starts
+   * batching; moving to another Z/T position in the same channel stops it.
+   */
+  private boolean detectCompositeAccess(int[] pos) {
+    if (lastPos != null) {
+      boolean samePlace = lastPos[0] == pos[0] && lastPos[2] == pos[2];
+      boolean sameChannel = lastPos[1] == pos[1];
+      if (samePlace && !sameChannel) detectedBatch = true;
+      else if (!samePlace && sameChannel) detectedBatch = false;
+    }
+    lastPos = pos;
+    if (!batchChannels && !detectedBatch) batch.clear();
+    return (batchChannels || detectedBatch) && reader.getSizeC() > 1;
+  }
+
+  /**
+   * Reads every channel of this stack at the given Z/T position, filling the
+   * plane cache for each one, and returns the given plane.
+   */
+  private ImageProcessor openChannels(int[] pos, int index)
+    throws FormatException, IOException
+  {
+    ImageProcessor ip = batch.get(index);
+    if (ip != null) return ip;
+    batch.clear();
+
+    // hold the shared reader for the whole batch, so that channels split
+    // from one source plane are read consecutively and decoded only once
+    synchronized (getSharedReader()) {
+      for (int c=0; c<reader.getSizeC(); c++) {
+        int channelIndex = reader.getIndex(pos[0], c, pos[2]);
+        if (channelIndex == index ||
+          selectedPlanes == null || selectedPlanes.get(channelIndex))
+        {
+          batch.put(channelIndex, openProcessor(channelIndex));
+        }
+      }
+    }
+    return batch.get(index);
+  }
+
+  /** Gets the reader shared by all stacks of the same import. */
+  private IFormatReader getSharedReader() {
+    IFormatReader r = reader;
+    while (r instanceof ReaderWrapper) {
+      if (r instanceof VirtualReader) return r;
+      r = ((ReaderWrapper) r).getReader();
+    }
+    return reader;
+  }
+
+  /** Reads the selected region of the given plane, through the plane cache. */
+  private ImageProcessor openProcessor(int index)
+    throws FormatException, IOException
+  {
+    if (region == null) {
+      return PlaneCache.openProcessor(reader, index, 0, 0,
+        reader.getSizeX(), reader.getSizeY(), transforms);
+    }
+    return PlaneCache.openProcessor(reader, index,
+      region.x, region.y, region.width, region.height, transforms);
+  }
+
 }
@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.process.ImageProcessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Virtual stack formed by concatenating other stacks, without copying or
+ * reading any planes. Each slice is mapped to the stack that contains it,
+ * e.g. the {@link BFVirtualStack} of one series, which reads the plane
+ * when it is requested.
+ */
+public class ConcatenatedVirtualStack extends VirtualStack {
+
+  // -- Fields --
+
+  private final List<ImageStack> stacks = new ArrayList<ImageStack>();
+
+  /** Index of the first slice (0-based) of each stack. */
+  private int[] starts = new int[0];
+
+  private int size;
+
+  // -- Constructor --
+
+  public ConcatenatedVirtualStack(ImageStack first) {
+    super(first.getWidth(), first.getHeight(), first.getColorModel(), null);
+    add(first);
+  }
+
+  // -- ConcatenatedVirtualStack API methods --
+
+  /** Appends all slices of the given stack. */
+  public synchronized void add(ImageStack stack) {
+    if (stack instanceof ConcatenatedVirtualStack) {
+      for (ImageStack s : ((ConcatenatedVirtualStack) stack).getStacks()) {
+        stacks.add(s);
+      }
+    }
+    else stacks.add(stack);
+    update();
+  }
+
+  /** Gets the concatenated stacks, in order. */
+  public synchronized List<ImageStack> getStacks() {
+    return Collections.unmodifiableList(new ArrayList<ImageStack>(stacks));
+  }
+
+  /** Gets the stack containing the given slice (1-based). */
+  public synchronized ImageStack getStack(int n) {
+    return stacks.get(find(n));
+  }
+
+  /** Gets the index (1-based) of the given slice within its stack. */
+  public synchronized int getLocalIndex(int n) {
+    return n - starts[find(n)];
+  }
+
+  // -- ImageStack API methods --
+
+  @Override
+  public synchronized ImageProcessor getProcessor(int n) {
+    int index = find(n);
+    return stacks.get(index).getProcessor(n - starts[index]);
+  }
+
+  @Override
+  public synchronized String getSliceLabel(int n) {
+    int index = find(n);
+    return stacks.get(index).getSliceLabel(n - starts[index]);
+  }
+
+  @Override
+  public synchronized void deleteSlice(int n) {
+    int index = find(n);
+    ImageStack stack = stacks.get(index);
+    stack.deleteSlice(n - starts[index]);
+    if (stack.getSize() == 0) stacks.remove(index);
+    update();
+  }
+
+  @Override
+  public synchronized int getSize() {
+    return size;
+  }
+
+  // -- Helper methods --
+
+  private void update() {
+    starts = new int[stacks.size()];
+    size = 0;
+    for (int i=0; i<starts.length; i++) {
+      starts[i] = size;
+      size += stacks.get(i).getSize();
+    }
+  }
+
+  /** Finds the stack containing the given slice (1-based). */
+  private int find(int n) {
+    if (n < 1 || n > size) {
+      throw new IllegalArgumentException("Slice index out of range: " + n);
+    }
+    int index = Arrays.binarySearch(starts, n - 1);
+    if (index < 0) index = -index - 2;
+    // skip over any empty stacks sharing the same start
+    while (index + 1 < starts.length && starts[index + 1] <= n - 1) index++;
+    return index;
+  }
+
+}
@@ -44,22 +44,19 @@ import java.awt.Label;
 import java.awt.Panel;
 import java.awt.Rectangle;
 import java.awt.Scrollbar;
+import java.awt.Window;
 import java.awt.event.ActionEvent;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.MouseWheelEvent;
-import java.io.IOException;
 
 import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
-import javax.xml.parsers.ParserConfigurationException;
 
 import loci.formats.FormatTools;
 import loci.formats.cache.Cache;
 import loci.formats.gui.CacheIndicator;
 import loci.formats.gui.XMLWindow;
 
-import org.xml.sax.SAXException;
-
 import com.jgoodies.forms.layout.CellConstraints;
 import com.jgoodies.forms.layout.FormLayout;
 
@@ -82,7 +79,14 @@ public class DataBrowser extends StackWindow {
   protected boolean anim = false;
   protected boolean allowShow = false;
 
+  /**
+   * OME-XML window given to the deprecated constructor, or null.
+   * @deprecated Use {@link #modelWindow} instead.
+   */
+  @Deprecated
   protected XMLWindow metaWindow;
+
+  protected OMEModelWindow modelWindow;
   protected BrowserOptionsWindow optionsWindow;
   protected String xml;
 
@@ -97,17 +101,33 @@ public class DataBrowser extends StackWindow {
   // -- Constructors --
 
   public DataBrowser(ImagePlus imp) {
-    this(imp, null, null, null, null);
+    this(imp, null, null, null, (OMEModelWindow) null);
   }
 
   public DataBrowser(final ImagePlus imp, ImageCanvas ic,
     String[] channels, int[] cLengths)
   {
-    this(imp, ic, channels, cLengths, null);
+    this(imp, ic, channels, cLengths, (OMEModelWindow) null);
   }
 
+  /**
+   * @deprecated Use
+   * {@link #DataBrowser(ImagePlus, ImageCanvas, String[], int[],
+   * OMEModelWindow)} instead.
+   */
+  @Deprecated
   public DataBrowser(final ImagePlus imp, ImageCanvas ic,
     String[] channels, int[] cLengths, XMLWindow xmlWindow)
+  {
+    this(imp, ic, channels, cLengths, (OMEModelWindow) null);
+    metaWindow = xmlWindow;
+    if (xmlWindow != null && xmlWindow.getDocument() != null) {
+      metadata.setEnabled(true);
+    }
+  }
+
+  public DataBrowser(final ImagePlus imp, ImageCanvas ic,
+    String[] channels, int[] cLengths, OMEModelWindow xmlWindow)
   {
     super(imp, ic);
 
@@ -121,9 +141,9 @@ public class DataBrowser extends StackWindow {
     cIndex = new int[cLengths.length];
 
     // build metadata window
-    metaWindow = xmlWindow;
-    if (metaWindow == null) {
-      metaWindow = new XMLWindow("OME Metadata - " + getTitle());
+    modelWindow = xmlWindow;
+    if (modelWindow == null) {
+      modelWindow = new OMEModelWindow("OME Metadata - " + getTitle());
     }
 
     // build fancy UI widgets
@@ -319,10 +339,9 @@ public class DataBrowser extends StackWindow {
 
     add(controls, BorderLayout.SOUTH);
 
-    FileInfo fi = imp.getOriginalFileInfo();
-    if (fi.description != null && fi.description.startsWith("<?xml")) {
-      setXML(fi.description);
-    }
+    // metadata is only loaded when the Metadata button is first clicked
+    metadata.setEnabled(modelWindow.hasMetadata() ||
+      getDescriptionXML(imp) != null);
 
     allowShow = true;
     pack();
@@ -365,19 +384,8 @@ public class DataBrowser extends StackWindow {
    * displayed in a tree structure when the Metadata button is clicked.
    */
   public void setXML(String xml) {
-    try {
-      metaWindow.setXML(xml);
-    }
-    catch (ParserConfigurationException exc) {
-      exc.printStackTrace();
-    }
-    catch (SAXException exc) {
-      exc.printStackTrace();
-    }
-    catch (IOException exc) {
-      exc.printStackTrace();
-    }
-    metadata.setEnabled(metaWindow.getDocument() != null);
+    modelWindow.setXML(xml);
+    metadata.setEnabled(modelWindow.hasMetadata());
   }
 
   /** Toggles whether the data browser is animating. */
@@ -399,15 +407,25 @@ public class DataBrowser extends StackWindow {
 
   /** Displays the OME-XML metadata window onscreen. */
   public void showMetadataWindow() {
+    Window window = modelWindow;
+    if (metaWindow != null && metaWindow.getDocument() != null) {
+      window = metaWindow;
+    }
+    else if (!modelWindow.hasMetadata()) {
+      String xml = getDescriptionXML(getImagePlus());
+      if (xml == null) return;
+      setXML(xml);
+    }
+
     // center window and show
     Rectangle r = getBounds();
-    Dimension w = metaWindow.getSize();
+    Dimension w = window.getSize();
     int x = r.x + (r.width - w.width) / 2;
     int y = r.y + (r.height - w.height) / 2;
     if (x < 5) x = 5;
     if (y < 5) y = 5;
-    metaWindow.setLocation(x, y);
-    metaWindow.setVisible(true);
+    window.setLocation(x, y);
+    window.setVisible(true);
   }
 
   // -- Window methods --
@@ -477,6 +495,13 @@ public class DataBrowser extends StackWindow {
 
   // -- Helper methods --
 
+  /** Gets the OME-XML in the given image's original file description. */
+  private static String getDescriptionXML(ImagePlus imp) {
+    FileInfo fi = imp.getOriginalFileInfo();
+    if (fi == null || fi.description == null) return null;
+    return fi.description.startsWith("<?xml") ? fi.description : null;
+  }
+
   /*
   private void updateSlice() {
     int sizeZ = imp.getNSlices();
@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.plugins.BF;
+
+/**
+ * Remembers which format reader recognized files with a given extension
+ * in a given directory, so that similar files can be identified without
+ * instantiating and probing the format readers ranked below it.
+ *
+ * Files are still probed by every enabled format reader ranked above the
+ * remembered one, so a more specific format (e.g. an ImageJ or MetaMorph
+ * TIFF among generic TIFFs) is never misread by a permissive reader.
+ *
+ * Entries are persisted in the ImageJ preferences through
+ * {@link LociPrefs#setDetectionCacheEntries(String)}.
+ */
+public final class DetectionCache {
+
+  // -- Constants --
+
+  /** Maximum number of directory and extension pairs remembered. */
+  private static final int MAX_ENTRIES = 256;
+
+  // -- Static fields --
+
+  /** Reader class names, keyed by directory and extension. */
+  private static Map<String, String> entries;
+
+  private static int hits, misses;
+
+  // -- Constructor --
+
+  private DetectionCache() { }
+
+  // -- Utility methods --
+
+  /**
+   * Gets an image reader for the given file which contains the format
+   * reader that recognized similar files previously, and the enabled format
+   * readers ranked above it. Returns null if there is no such reader or
+   * none of them recognizes the file.
+   */
+  public static ImageReader getCachedReader(String id) {
+    String className;
+    synchronized (DetectionCache.class) {
+      className = getEntries().get(getKey(id));
+    }
+
+    Class<? extends IFormatReader> c = getReaderClass(className);
+    ImageReader reader = c == null ? null : LociPrefs.makeImageReaderUpTo(c);
+    if (reader != null) {
+      try {
+        reader.getReader(id);
+        count(true);
+        return reader;
+      }
+      catch (FormatException e) {
+        BF.debug("Detection cache: no reader up to " + c.getName() +
+          " recognized " + id);
+      }
+      catch (IOException e) {
+        BF.debug("Detection cache: " + e.getMessage());
+      }
+    }
+    count(false);
+    return null;
+  }
+
+  /** Records the format reader which recognized the given file. */
+  public static synchronized void record(String id,
+    Class<? extends IFormatReader> c)
+  {
+    String key = getKey(id);
+    if (c.getName().equals(getEntries().get(key))) return;
+    getEntries().put(key, c.getName());
+
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> entry : entries.entrySet()) {
+      if (sb.length() > 0) sb.append("\n");
+      sb.append(entry.getKey()).append("\t").append(entry.getValue());
+    }
+    LociPrefs.setDetectionCacheEntries(sb.toString());
+  }
+
+  /** Gets the number of files identified using the cached reader. */
+  public static synchronized int getHitCount() { return hits; }
+
+  /** Gets the number of files which required full format detection. */
+  public static synchronized int getMissCount() { return misses; }
+
+  /** Forgets all entries and resets the hit and miss counters. */
+  public static synchronized void clear() {
+    entries = null;
+    hits = 0;
+    misses = 0;
+    LociPrefs.setDetectionCacheEntries(null);
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Discards the entries held in memory, so that they are read again from
+   * the preferences when next needed.
+   */
+  static synchronized void reload() {
+    entries = null;
+  }
+
+  private static synchronized void count(boolean hit) {
+    if (hit) hits++;
+    else misses++;
+    BF.debug("Detection cache: " + hits + " hits, " + misses + " misses");
+  }
+
+  /** Gets the directory and extension key for the given file. */
+  private static String getKey(String id) {
+    File file = new File(id).getAbsoluteFile();
+    String name = file.getName().toLowerCase();
+    int dot = name.lastIndexOf(".");
+    String ext = dot < 0 ? "" : name.substring(dot + 1);
+    // keep compound extensions such as .ome.tif distinct from .tif
+    if (name.endsWith(".ome." + ext)) ext = "ome." + ext;
+    return file.getParent() + File.separator + "*." + ext;
+  }
+
+  private static Map<String, String> getEntries() {
+    if (entries == null) {
+      entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> e) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+      String[] lines = LociPrefs.getDetectionCacheEntries().split("\n");
+      for (String line : lines) {
+        int tab = line.lastIndexOf("\t");
+        if (tab > 0) {
+          entries.put(line.substring(0, tab), line.substring(tab + 1));
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static Class<? extends IFormatReader> getReaderClass(String name) {
+    if (name == null) return null;
+    try {
+      return Class.forName(name).asSubclass(IFormatReader.class);
+    }
+    catch (ClassNotFoundException e) {
+      BF.debug("Detection cache: unknown reader " + name);
+    }
+    catch (ClassCastException e) {
+      BF.debug("Detection cache: invalid reader " + name);
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.Prefs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import loci.formats.FormatHandler;
+import loci.formats.ImageReader;
+import loci.plugins.BF;
+
+/**
+ * Finds the groups of similarly named image files within a directory.
+ *
+ * Files whose extension is not known to any reader are rejected without
+ * further checks; the contents of the remaining files are then checked with
+ * {@link ImageReader#isThisType(String, boolean)} in parallel, as their
+ * extension alone is not always conclusive. Files are then grouped in a
+ * single pass over the sorted listing, by treating names which differ only
+ * in their numeric blocks as part of the same group (as
+ * {@link loci.formats.FilePattern} would).
+ *
+ * The type of each file is recorded in an index stored in the ImageJ
+ * preferences directory, so that rescanning a directory only examines
+ * files which are new or have been modified since the last scan.
+ */
+public class DirectoryScanner {
+
+  // -- Constants --
+
+  private static final String INDEX_DIR = "bio-formats-scan";
+
+  // -- Fields --
+
+  private File dir;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private boolean quiet;
+
+  /** Number of files examined by a reader during the last scan. */
+  private int examined;
+
+  // -- Constructor --
+
+  public DirectoryScanner(File dir) {
+    this.dir = dir.getAbsoluteFile();
+  }
+
+  // -- DirectoryScanner API methods --
+
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  public void setQuiet(boolean quiet) {
+    this.quiet = quiet;
+  }
+
+  /** Gets the number of files examined by a reader during the last scan. */
+  public int getExaminedCount() {
+    return examined;
+  }
+
+  /**
+   * Scans the directory.
+   * @return the absolute path of the first file in each group of
+   *   supported files, in sorted order
+   */
+  public List<String> scan() throws IOException {
+    File[] files = dir.listFiles();
+    if (files == null) return new ArrayList<String>();
+    Arrays.sort(files);
+
+    // determine which files are supported, reusing the index if possible
+    Index index = readIndex();
+
+    String[] suffixes = new ImageReader().getSuffixes();
+    long[] modified = new long[files.length];
+    Boolean[] supported = new Boolean[files.length];
+    List<Integer> toExamine = new ArrayList<Integer>();
+    for (int i=0; i<files.length; i++) {
+      String name = files[i].getName();
+      long[] entry = index == null ? null : index.entries.get(name);
+      if (files[i].isDirectory()) {
+        supported[i] = false;
+        continue;
+      }
+      modified[i] = files[i].lastModified();
+      if (entry != null && entry[0] == modified[i]) {
+        supported[i] = entry[1] != 0;
+      }
+      else if (!FormatHandler.checkSuffix(name, suffixes)) {
+        supported[i] = false;
+      }
+      else toExamine.add(i);
+    }
+    examined = toExamine.size();
+    examine(files, toExamine, supported);
+
+    writeIndex(files, modified, supported);
+
+    // group files whose names differ only by numbers, in one pass
+    Map<String, String> groups = new LinkedHashMap<String, String>();
+    for (int i=0; i<files.length; i++) {
+      if (!supported[i]) continue;
+      String key = getGroupKey(files[i].getName());
+      if (!groups.containsKey(key)) {
+        groups.put(key, files[i].getAbsolutePath());
+      }
+    }
+    return new ArrayList<String>(groups.values());
+  }
+
+  // -- Utility methods --
+
+  /**
+   * Gets the key identifying the group of the given file name;
+   * each run of digits is replaced with a placeholder.
+   */
+  public static String getGroupKey(String name) {
+    StringBuilder sb = new StringBuilder(name.length());
+    boolean digits = false;
+    for (int i=0; i<name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isDigit(c)) {
+        if (!digits) sb.append('#');
+        digits = true;
+      }
+      else {
+        sb.append(c);
+        digits = false;
+      }
+    }
+    return sb.toString();
+  }
+
+  // -- Helper methods --
+
+  /** Checks the given files using one reader per worker thread. */
+  private void examine(final File[] files, List<Integer> toExamine,
+    final Boolean[] supported) throws IOException
+  {
+    if (toExamine.size() == 0) return;
+    final int total = toExamine.size();
+    final AtomicInteger done = new AtomicInteger();
+    int nThreads = Math.min(threads, toExamine.size());
+    int chunk = (toExamine.size() + nThreads - 1) / nThreads;
+
+    ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+    List<Future<Void>> results = new ArrayList<Future<Void>>();
+    try {
+      for (int start=0; start<total; start+=chunk) {
+        final List<Integer> indices =
+          toExamine.subList(start, Math.min(total, start + chunk));
+        results.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            try (ImageReader reader = new ImageReader()) {
+              for (int i : indices) {
+                supported[i] =
+                  reader.isThisType(files[i].getAbsolutePath(), true);
+                BF.progress(quiet, done.incrementAndGet(), total);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Directory scan interrupted", e);
+    }
+    catch (ExecutionException e) {
+      throw new IOException("Directory scan failed", e.getCause());
+    }
+    finally {
+      pool.shutdownNow();
+      BF.progress(quiet, 1, 1);
+    }
+  }
+
+  /** Gets the file in which the index of the directory is stored. */
+  File getIndexFile() {
+    String prefsDir = Prefs.getPrefsDir();
+    if (prefsDir == null) return null;
+    String name = Integer.toHexString(dir.getPath().hashCode()) + ".txt";
+    return new File(new File(prefsDir, INDEX_DIR), name);
+  }
+
+  /** Reads the index of the directory, or returns null if there is none. */
+  private Index readIndex() {
+    File file = getIndexFile();
+    if (file == null || !file.exists()) return null;
+    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+      // the first line records which directory the index belongs to
+      if (!dir.getPath().equals(in.readLine())) return null;
+      Index index = new Index();
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] tokens = line.split("\t", 3);
+        if (tokens.length != 3) continue;
+        index.entries.put(tokens[2], new long[] {
+          Long.parseLong(tokens[0]), Long.parseLong(tokens[1])});
+      }
+      return index;
+    }
+    catch (IOException e) {
+      BF.debug("Could not read scan index: " + e.getMessage());
+    }
+    catch (NumberFormatException e) {
+      BF.debug("Could not read scan index: " + e.getMessage());
+    }
+    return null;
+  }
+
+  private void writeIndex(File[] files, long[] modified, Boolean[] supported)
+  {
+    File file = getIndexFile();
+    if (file == null) return;
+    file.getParentFile().mkdirs();
+    try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+      out.println(dir.getPath());
+      for (int i=0; i<files.length; i++) {
+        out.println(modified[i] + "\t" + (supported[i] ? 1 : 0) + "\t" +
+          files[i].getName());
+      }
+    }
+    catch (IOException e) {
+      BF.debug("Could not write scan index: " + e.getMessage());
+    }
+  }
+
+  // -- Helper classes --
+
+  /** Per-file results of a previous scan, keyed by file name. */
+  private static class Index {
+    private Map<String, long[]> entries = new HashMap<String, long[]>();
+  }
+
+}
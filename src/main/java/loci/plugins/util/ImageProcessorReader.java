@@ -87,7 +87,7 @@ public class ImageProcessorReader extends ReaderWrapper {
     throws FormatException, IOException
   {
     // read byte array
-    byte[] b = openThumbBytes(no);
+    byte[] b = ThumbnailCache.openThumbBytes(this, no);
 
     int c = getRGBChannelCount();
     int type = getPixelType();
@@ -30,14 +30,18 @@ package loci.plugins.util;
 import ij.process.ImageProcessor;
 
 import java.io.IOException;
+import java.util.List;
 
+import loci.common.Region;
 import loci.formats.FormatException;
 import loci.formats.IFormatReader;
 import loci.formats.cache.CacheException;
 import loci.formats.cache.ICacheSource;
 
 /**
- * Retrieves ImageJ image processors from an image reader.
+ * Retrieves ImageJ image processors from an image reader,
+ * through the shared {@link PlaneCache}. The processors are shared with
+ * the plane cache and must not be modified.
  */
 public class ImageProcessorSource implements ICacheSource {
 
@@ -46,9 +50,20 @@ public class ImageProcessorSource implements ICacheSource {
   /** Image reader from which to draw ImageProcessors. */
   protected ImageProcessorReader reader;
 
+  /** Region of each plane to read, or null for the whole plane. */
+  protected Region region;
+
+  /** Transforms applied to each plane as it is read, or null for none. */
+  protected List<PlaneTransform> transforms;
+
   // -- Constructors --
 
   public ImageProcessorSource(IFormatReader reader) {
+    this(reader, null);
+  }
+
+  public ImageProcessorSource(IFormatReader reader, Region region) {
+    this.region = region;
     if (reader instanceof ImageProcessorReader) {
       this.reader = (ImageProcessorReader) reader;
     }
@@ -57,6 +72,13 @@ public class ImageProcessorSource implements ICacheSource {
     }
   }
 
+  // -- ImageProcessorSource API methods --
+
+  /** Sets the transforms applied to each plane as it is read. */
+  public void setPlaneTransforms(List<PlaneTransform> transforms) {
+    this.transforms = transforms;
+  }
+
   // -- ICacheSource API methods --
 
   /* @see loci.formats.cache.ICacheSource#getObject(int) */
@@ -69,7 +91,14 @@ public class ImageProcessorSource implements ICacheSource {
     // assumes that channels are separated
     ImageProcessor ip = null;
     try {
-      ip = reader.openProcessors(index)[0];
+      if (region == null) {
+        ip = PlaneCache.openSharedProcessor(reader, index, 0, 0,
+          reader.getSizeX(), reader.getSizeY(), transforms);
+      }
+      else {
+        ip = PlaneCache.openSharedProcessor(reader, index,
+          region.x, region.y, region.width, region.height, transforms);
+      }
     }
     catch (FormatException exc) {
       throw new CacheException(exc);
@@ -29,6 +29,11 @@ package loci.plugins.util;
 
 import ij.Prefs;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
 import loci.formats.ClassList;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
@@ -73,6 +78,42 @@ public final class LociPrefs {
   public static final String PREF_SLICE_LABEL_BASE_INDEX = "bioformats.sliceLabelBaseIndex";
   public static final String PREF_CELLSENS_FAIL =
     "bioformats.cellsens.fail_on_missing_ets";
+  public static final String PREF_DETECTION_CACHE =
+    "bioformats.detectionCache";
+  public static final String PREF_DETECTION_CACHE_ENTRIES =
+    "bioformats.detectionCache.entries";
+  public static final String PREF_THUMBNAIL_CACHE_SIZE =
+    "bioformats.thumbnailCacheSize";
+  public static final String PREF_PLANE_CACHE_SIZE =
+    "bioformats.planeCacheSize";
+  public static final String PREF_IDLE_READER_TIMEOUT =
+    "bioformats.idleReaderTimeout";
+
+  // -- Static fields --
+
+  /**
+   * Reader configuration derived from the current preferences,
+   * or null if it must be recomputed.
+   */
+  private static volatile ReaderConfig readerConfig;
+
+  /**
+   * Reader prepared in the background for the next call to
+   * {@link #makeImageReader()}, or null if none is ready.
+   */
+  private static final AtomicReference<SpareReader> SPARE_READER =
+    new AtomicReference<SpareReader>();
+
+  /** Thread on which spare readers are prepared. */
+  private static final ExecutorService SPARE_EXECUTOR =
+    Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "BioFormats-ReaderPool");
+        t.setDaemon(true);
+        return t;
+      }
+    });
 
   // -- Constructor --
 
@@ -84,67 +125,64 @@ public final class LociPrefs {
    * Creates an image reader according to the current configuration settings,
    * including which format readers are currently enabled, as well as
    * format-specific configuration settings.
+   *
+   * The list of enabled readers and the reader options are computed once
+   * and reused until {@link #resetReaderConfig()} is called. Creating an
+   * image reader instantiates every enabled format reader, so the next
+   * reader is prepared on a background thread while the caller uses this
+   * one; each reader is only ever returned once.
    */
   public static ImageReader makeImageReader() {
-    ClassList<IFormatReader> defaultClasses =
-      ImageReader.getDefaultReaderClasses();
-    Class<? extends IFormatReader>[] c = defaultClasses.getClasses();
+    ReaderConfig config = getReaderConfig();
+    SpareReader spare = SPARE_READER.getAndSet(null);
+    ImageReader reader = spare != null && spare.config == config ?
+      spare.reader : makeImageReader(config, config.enabledClasses);
+    prepareSpareReader(config);
+    return reader;
+  }
 
-    // include only enabled classes
-    ClassList<IFormatReader> enabledClasses =
+  /**
+   * Creates an image reader which uses only the given format reader,
+   * configured according to the current configuration settings.
+   */
+  public static ImageReader makeImageReader(
+    Class<? extends IFormatReader> readerClass)
+  {
+    ClassList<IFormatReader> classes =
       new ClassList<IFormatReader>(IFormatReader.class);
-    for (int i=0; i<c.length; i++) {
-      boolean on = LociPrefs.isReaderEnabled(c[i]);
-      if (on) enabledClasses.addClass(c[i]);
-    }
-    ImageReader reader = new ImageReader(enabledClasses);
-
-    MetadataOptions options = reader.getMetadataOptions();
-    if (options instanceof DynamicMetadataOptions) {
-      ((DynamicMetadataOptions) options).setBoolean(
-        ZeissCZIReader.ALLOW_AUTOSTITCHING_KEY, allowCZIAutostitch());
-      ((DynamicMetadataOptions) options).setBoolean(
-        ZeissCZIReader.INCLUDE_ATTACHMENTS_KEY, includeCZIAttachments());
-      ((DynamicMetadataOptions) options).setBoolean(
-        NativeND2Reader.USE_CHUNKMAP_KEY, useND2Chunkmap());
-      ((DynamicMetadataOptions) options).setBoolean(
-        LIFReader.OLD_PHYSICAL_SIZE_KEY, isLeicaLIFPhysicalSizeBackwardsCompatible());
-      ((DynamicMetadataOptions) options).setBoolean(
-        CellSensReader.FAIL_ON_MISSING_KEY, isCellsensFailOnMissing());
-      reader.setMetadataOptions(options);
-    }
+    classes.addClass(readerClass);
+    return makeImageReader(getReaderConfig(), classes);
+  }
 
-    // toggle reader-specific options
-    boolean nd2Nikon = LociPrefs.isND2Nikon();
-    boolean pictQTJava = LociPrefs.isPictQTJava();
-    boolean qtQTJava = LociPrefs.isQTQTJava();
-    boolean sdtIntensity = LociPrefs.isSDTIntensity();
-    boolean tiffImageIO = LociPrefs.isTiffImageIO();
-    IFormatReader[] r = reader.getReaders();
-    for (int i=0; i<r.length; i++) {
-      if (r[i] instanceof ND2Reader) {
-        ND2Reader nd2 = (ND2Reader) r[i];
-        nd2.setLegacy(nd2Nikon);
-      }
-      else if (r[i] instanceof PictReader) {
-        PictReader pict = (PictReader) r[i];
-        pict.setLegacy(pictQTJava);
-      }
-      else if (r[i] instanceof QTReader) {
-        QTReader qt = (QTReader) r[i];
-        qt.setLegacy(qtQTJava);
-      }
-      else if (r[i] instanceof SDTReader) {
-        SDTReader sdt = (SDTReader) r[i];
-        sdt.setIntensity(sdtIntensity);
-      }
-      else if (r[i] instanceof TiffDelegateReader) {
-        TiffDelegateReader tiff = (TiffDelegateReader) r[i];
-        tiff.setLegacy(tiffImageIO);
-      }
+  /**
+   * Creates an image reader which uses the enabled format readers up to and
+   * including the given one, in detection order, configured according to
+   * the current configuration settings. Such a reader detects any file
+   * accepted by the given format reader exactly as a full image reader
+   * would. Returns null if the given format reader is not enabled.
+   */
+  public static ImageReader makeImageReaderUpTo(
+    Class<? extends IFormatReader> readerClass)
+  {
+    ReaderConfig config = getReaderConfig();
+    ClassList<IFormatReader> classes =
+      new ClassList<IFormatReader>(IFormatReader.class);
+    for (Class<? extends IFormatReader> c :
+      config.enabledClasses.getClasses())
+    {
+      classes.addClass(c);
+      if (c == readerClass) return makeImageReader(config, classes);
     }
+    return null;
+  }
 
-    return reader;
+  /**
+   * Discards the cached reader configuration, so that subsequent calls to
+   * {@link #makeImageReader()} reflect any changed preferences.
+   */
+  public static void resetReaderConfig() {
+    readerConfig = null;
+    SPARE_READER.set(null);
   }
 
   /**
@@ -210,8 +248,133 @@ public final class LociPrefs {
     return Prefs.get(PREF_CELLSENS_FAIL, CellSensReader.FAIL_ON_MISSING_DEFAULT);
   }
 
+  public static boolean isDetectionCacheEnabled() {
+    return Prefs.get(PREF_DETECTION_CACHE, false);
+  }
+
+  public static String getDetectionCacheEntries() {
+    return Prefs.get(PREF_DETECTION_CACHE_ENTRIES, "");
+  }
+
+  public static void setDetectionCacheEntries(String entries) {
+    Prefs.set(PREF_DETECTION_CACHE_ENTRIES, entries);
+  }
+
+  /** Gets the maximum size of the thumbnail cache in MB; 0 disables it. */
+  public static int getThumbnailCacheSize() {
+    return Prefs.getInt(PREF_THUMBNAIL_CACHE_SIZE, 64);
+  }
+
+  /** Gets the maximum size of the shared plane cache in MB; 0 disables it. */
+  public static int getPlaneCacheSize() {
+    return Prefs.getInt(PREF_PLANE_CACHE_SIZE, 512);
+  }
+
+  /**
+   * Gets the number of seconds after which the files of an unused virtual
+   * stack are closed; 0 keeps them open.
+   */
+  public static int getIdleReaderTimeout() {
+    return Prefs.getInt(PREF_IDLE_READER_TIMEOUT, 60);
+  }
+
   // -- Helper methods --
 
+  private static ImageReader makeImageReader(ReaderConfig config,
+    ClassList<IFormatReader> classes)
+  {
+    ImageReader reader = new ImageReader(classes);
+
+    MetadataOptions options = reader.getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      ((DynamicMetadataOptions) options).setBoolean(
+        ZeissCZIReader.ALLOW_AUTOSTITCHING_KEY, config.cziAutostitch);
+      ((DynamicMetadataOptions) options).setBoolean(
+        ZeissCZIReader.INCLUDE_ATTACHMENTS_KEY, config.cziAttachments);
+      ((DynamicMetadataOptions) options).setBoolean(
+        NativeND2Reader.USE_CHUNKMAP_KEY, config.nd2Chunkmap);
+      ((DynamicMetadataOptions) options).setBoolean(
+        LIFReader.OLD_PHYSICAL_SIZE_KEY, config.lifPhysicalSize);
+      ((DynamicMetadataOptions) options).setBoolean(
+        CellSensReader.FAIL_ON_MISSING_KEY, config.cellsensFail);
+      reader.setMetadataOptions(options);
+    }
+
+    // toggle reader-specific options
+    IFormatReader[] r = reader.getReaders();
+    for (int i=0; i<r.length; i++) {
+      if (r[i] instanceof ND2Reader) {
+        ND2Reader nd2 = (ND2Reader) r[i];
+        nd2.setLegacy(config.nd2Nikon);
+      }
+      else if (r[i] instanceof PictReader) {
+        PictReader pict = (PictReader) r[i];
+        pict.setLegacy(config.pictQTJava);
+      }
+      else if (r[i] instanceof QTReader) {
+        QTReader qt = (QTReader) r[i];
+        qt.setLegacy(config.qtQTJava);
+      }
+      else if (r[i] instanceof SDTReader) {
+        SDTReader sdt = (SDTReader) r[i];
+        sdt.setIntensity(config.sdtIntensity);
+      }
+      else if (r[i] instanceof TiffDelegateReader) {
+        TiffDelegateReader tiff = (TiffDelegateReader) r[i];
+        tiff.setLegacy(config.tiffImageIO);
+      }
+    }
+
+    return reader;
+  }
+
+  /** Prepares a reader for the given configuration, unless one is ready. */
+  private static void prepareSpareReader(final ReaderConfig config) {
+    SPARE_EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (readerConfig != config || SPARE_READER.get() != null) return;
+        ImageReader reader = makeImageReader(config, config.enabledClasses);
+        SPARE_READER.compareAndSet(null, new SpareReader(config, reader));
+      }
+    });
+  }
+
+  /**
+   * Gets the reader configuration derived from the current preferences,
+   * computing it if necessary.
+   */
+  static ReaderConfig getReaderConfig() {
+    ReaderConfig config = readerConfig;
+    if (config != null) return config;
+
+    config = new ReaderConfig();
+    ClassList<IFormatReader> defaultClasses =
+      ImageReader.getDefaultReaderClasses();
+    Class<? extends IFormatReader>[] c = defaultClasses.getClasses();
+
+    // include only enabled classes
+    config.enabledClasses = new ClassList<IFormatReader>(IFormatReader.class);
+    for (int i=0; i<c.length; i++) {
+      boolean on = LociPrefs.isReaderEnabled(c[i]);
+      if (on) config.enabledClasses.addClass(c[i]);
+    }
+
+    config.cziAutostitch = allowCZIAutostitch();
+    config.cziAttachments = includeCZIAttachments();
+    config.nd2Chunkmap = useND2Chunkmap();
+    config.lifPhysicalSize = isLeicaLIFPhysicalSizeBackwardsCompatible();
+    config.cellsensFail = isCellsensFailOnMissing();
+    config.nd2Nikon = isND2Nikon();
+    config.pictQTJava = isPictQTJava();
+    config.qtQTJava = isQTQTJava();
+    config.sdtIntensity = isSDTIntensity();
+    config.tiffImageIO = isTiffImageIO();
+
+    readerConfig = config;
+    return config;
+  }
+
   private static boolean getPref(String pref,
     Class<? extends IFormatReader> c, boolean defaultValue)
   {
@@ -221,4 +384,32 @@ public final class LociPrefs {
     return Prefs.get(key, defaultValue);
   }
 
+  // -- Helper classes --
+
+  /** Snapshot of the preferences used to construct image readers. */
+  static class ReaderConfig {
+    private ClassList<IFormatReader> enabledClasses;
+    private boolean cziAutostitch;
+    private boolean cziAttachments;
+    private boolean nd2Chunkmap;
+    private boolean lifPhysicalSize;
+    private boolean cellsensFail;
+    private boolean nd2Nikon;
+    private boolean pictQTJava;
+    private boolean qtQTJava;
+    private boolean sdtIntensity;
+    private boolean tiffImageIO;
+  }
+
+  /** Reader prepared in advance, with the configuration it was built for. */
+  private static class SpareReader {
+    private final ReaderConfig config;
+    private final ImageReader reader;
+
+    private SpareReader(ReaderConfig config, ImageReader reader) {
+      this.config = config;
+      this.reader = reader;
+    }
+  }
+
 }
@@ -0,0 +1,305 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTree;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+
+import loci.common.services.DependencyException;
+import loci.common.services.ServiceException;
+import loci.common.services.ServiceFactory;
+import loci.formats.meta.IMetadata;
+import loci.formats.services.OMEXMLService;
+import loci.plugins.BF;
+import ome.units.quantity.Quantity;
+import ome.xml.model.OMEModelObject;
+
+/**
+ * Window displaying OME metadata as a tree, read directly from the
+ * in-memory OME model rather than from serialized OME-XML.
+ *
+ * Each node corresponds to a model object; its attributes are shown in
+ * the node's label and its child objects are only looked up when the
+ * node is displayed or expanded, so the window opens immediately
+ * regardless of the size of the metadata. References to other objects
+ * (the "Linked" properties) are not followed.
+ */
+public class OMEModelWindow extends JFrame {
+
+  // -- Constants --
+
+  /** Maximum number of characters shown for each attribute value. */
+  private static final int MAX_VALUE_LENGTH = 100;
+
+  /** Reflected properties of each model class. */
+  private static final Map<Class<?>, ModelClass> CLASSES =
+    new ConcurrentHashMap<Class<?>, ModelClass>();
+
+  // -- Fields --
+
+  private JTree tree;
+  private boolean hasMetadata;
+
+  // -- Constructor --
+
+  public OMEModelWindow(String title) {
+    super(title);
+    tree = new JTree(new DefaultTreeModel(null));
+    tree.setLargeModel(true);
+    setContentPane(new JScrollPane(tree));
+    setSize(600, 600);
+  }
+
+  // -- OMEModelWindow API methods --
+
+  /** Displays the given metadata, which is not serialized or copied. */
+  public void setMetadata(IMetadata meta) {
+    Object root = meta == null ? null : meta.getRoot();
+    if (root instanceof OMEModelObject) {
+      tree.setModel(new DefaultTreeModel(new ModelNode("OME", root, null)));
+      hasMetadata = true;
+    }
+    else {
+      tree.setModel(new DefaultTreeModel(null));
+      hasMetadata = false;
+    }
+  }
+
+  /** Displays the given OME-XML string, parsed into the OME model. */
+  public void setXML(String xml) {
+    IMetadata meta = null;
+    try {
+      ServiceFactory factory = new ServiceFactory();
+      OMEXMLService service = factory.getInstance(OMEXMLService.class);
+      meta = service.createOMEXMLMetadata(xml);
+    }
+    catch (DependencyException de) {
+      BF.debug("Could not parse OME-XML: " + de.getMessage());
+    }
+    catch (ServiceException se) {
+      BF.debug("Could not parse OME-XML: " + se.getMessage());
+    }
+    setMetadata(meta);
+  }
+
+  /** Checks whether any metadata is being displayed. */
+  public boolean hasMetadata() {
+    return hasMetadata;
+  }
+
+  // -- Helper methods --
+
+  private static ModelClass getModelClass(Class<?> c) {
+    ModelClass mc = CLASSES.get(c);
+    if (mc == null) {
+      mc = new ModelClass(c);
+      CLASSES.put(c, mc);
+    }
+    return mc;
+  }
+
+  private static Object invoke(Method m, Object o, Object... args) {
+    try {
+      return m.invoke(o, args);
+    }
+    catch (IllegalAccessException e) {
+      BF.debug("Could not read " + m.getName() + ": " + e.getMessage());
+    }
+    catch (InvocationTargetException e) {
+      BF.debug("Could not read " + m.getName() + ": " + e.getMessage());
+    }
+    return null;
+  }
+
+  private static String format(Object value) {
+    String s;
+    if (value instanceof Quantity) {
+      Quantity q = (Quantity) value;
+      s = q.value() + " " + q.unit().getSymbol();
+    }
+    else s = String.valueOf(value);
+    if (s.length() > MAX_VALUE_LENGTH) {
+      s = s.substring(0, MAX_VALUE_LENGTH) + "...";
+    }
+    return s;
+  }
+
+  // -- Helper classes --
+
+  /** The attribute and child accessors of a model class. */
+  private static class ModelClass {
+    /** Getters for simple values, with the ID first. */
+    private final List<Method> attributes = new ArrayList<Method>();
+
+    /** Getters for single child objects. */
+    private final List<Method> children = new ArrayList<Method>();
+
+    /** sizeOfXList and getX(int) pairs for lists of child objects. */
+    private final List<Method[]> lists = new ArrayList<Method[]>();
+
+    private ModelClass(Class<?> c) {
+      Method[] methods = c.getMethods();
+      Arrays.sort(methods, new Comparator<Method>() {
+        @Override
+        public int compare(Method a, Method b) {
+          boolean idA = a.getName().equals("getID");
+          boolean idB = b.getName().equals("getID");
+          if (idA != idB) return idA ? -1 : 1;
+          return a.getName().compareTo(b.getName());
+        }
+      });
+      for (Method m : methods) {
+        String name = m.getName();
+        if (Modifier.isStatic(m.getModifiers())) continue;
+        if (name.startsWith("getLinked") || name.startsWith("sizeOfLinked")) {
+          continue;
+        }
+        Class<?>[] params = m.getParameterTypes();
+        Class<?> type = m.getReturnType();
+        if (name.startsWith("sizeOf") && name.endsWith("List") &&
+          params.length == 0 && type == int.class)
+        {
+          String element = name.substring(6, name.length() - 4);
+          try {
+            Method get = c.getMethod("get" + element, int.class);
+            if (OMEModelObject.class.isAssignableFrom(get.getReturnType())) {
+              lists.add(new Method[] {m, get});
+            }
+          }
+          catch (NoSuchMethodException e) { }
+        }
+        else if (name.startsWith("get") && params.length == 0 &&
+          !name.equals("getClass"))
+        {
+          if (OMEModelObject.class.isAssignableFrom(type)) children.add(m);
+          else if (!List.class.isAssignableFrom(type) &&
+            !Map.class.isAssignableFrom(type) && !type.isArray())
+          {
+            attributes.add(m);
+          }
+        }
+      }
+    }
+  }
+
+  /** Tree node for one model object, whose children are found lazily. */
+  private static class ModelNode extends DefaultMutableTreeNode {
+    private final String name;
+    private final ModelNode parentNode;
+    private String label;
+    private boolean loaded;
+
+    private ModelNode(String name, Object object, ModelNode parentNode) {
+      super(object);
+      this.name = name;
+      this.parentNode = parentNode;
+    }
+
+    @Override
+    public boolean isLeaf() {
+      return getChildCount() == 0;
+    }
+
+    @Override
+    public int getChildCount() {
+      load();
+      return super.getChildCount();
+    }
+
+    @Override
+    public TreeNode getChildAt(int index) {
+      load();
+      return super.getChildAt(index);
+    }
+
+    @Override
+    public String toString() {
+      if (label == null) {
+        Object object = getUserObject();
+        StringBuilder sb = new StringBuilder(name);
+        for (Method m : getModelClass(object.getClass()).attributes) {
+          Object value = invoke(m, object);
+          if (value == null) continue;
+          sb.append(" ");
+          sb.append(m.getName().substring(3));
+          sb.append("=\"");
+          sb.append(format(value));
+          sb.append("\"");
+        }
+        label = sb.toString();
+      }
+      return label;
+    }
+
+    /** Adds the child nodes, if not done already. */
+    private synchronized void load() {
+      if (loaded) return;
+      loaded = true;
+      Object object = getUserObject();
+      ModelClass mc = getModelClass(object.getClass());
+      for (Method m : mc.children) {
+        Object child = invoke(m, object);
+        if (child != null && !isAncestor(child)) {
+          add(new ModelNode(m.getName().substring(3), child, this));
+        }
+      }
+      for (Method[] list : mc.lists) {
+        Object size = invoke(list[0], object);
+        int count = size instanceof Integer ? (Integer) size : 0;
+        String element = list[1].getName().substring(3);
+        for (int i=0; i<count; i++) {
+          Object child = invoke(list[1], object, i);
+          if (child != null) add(new ModelNode(element, child, this));
+        }
+      }
+    }
+
+    /** Checks whether the given object is this node's or an ancestor's. */
+    private boolean isAncestor(Object object) {
+      for (ModelNode n = this; n != null; n = n.parentNode) {
+        if (n.getUserObject() == object) return true;
+      }
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import loci.common.Region;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.ReaderWrapper;
+import loci.plugins.BF;
+
+/**
+ * Reader wrapper for a {@link loci.formats.TileStitcher} which reads the
+ * tiles of a stitched plane concurrently.
+ *
+ * A requested region is split along the tile grid of the underlying
+ * reader, so only tiles intersecting the region are read. The first tile
+ * is read through the wrapped reader on the calling thread; the others are
+ * read through independent copies of the reader stack, which are created
+ * on demand by a {@link ReaderFactory} and reused, one per thread.
+ */
+public class ParallelTileReader extends ReaderWrapper {
+
+  // -- Constants --
+
+  /** Maximum number of threads reading tiles of one plane. */
+  private static final int MAX_THREADS = 8;
+
+  // -- Fields --
+
+  private final ReaderFactory factory;
+  private final int threadCount;
+  private ExecutorService executor;
+
+  /** Reader copies which are not currently in use. */
+  private final List<IFormatReader> clones = new ArrayList<IFormatReader>();
+
+  /** Reader copies whose files were closed by {@link #close(boolean)}. */
+  private final Set<IFormatReader> closedClones =
+    new HashSet<IFormatReader>();
+
+  /** Tile width and height of each series. */
+  private final Map<Integer, int[]> tileSizes = new HashMap<Integer, int[]>();
+
+  /** Whether copies of the reader can be created. */
+  private volatile boolean parallel = true;
+
+  // -- Constructor --
+
+  public ParallelTileReader(IFormatReader r, ReaderFactory factory) {
+    super(r);
+    this.factory = factory;
+    threadCount =
+      Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS);
+  }
+
+  // -- IFormatReader API methods --
+
+  @Override
+  public byte[] openBytes(int no) throws FormatException, IOException {
+    return openBytes(no, 0, 0, getSizeX(), getSizeY());
+  }
+
+  @Override
+  public byte[] openBytes(int no, byte[] buf)
+    throws FormatException, IOException
+  {
+    return openBytes(no, buf, 0, 0, getSizeX(), getSizeY());
+  }
+
+  @Override
+  public byte[] openBytes(int no, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    byte[] buf = new byte[w * h * bpp * getRGBChannelCount()];
+    return openBytes(no, buf, x, y, w, h);
+  }
+
+  @Override
+  public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    List<Region> tiles = parallel && threadCount > 1 ?
+      getTiles(new Region(x, y, w, h)) : null;
+    if (tiles == null || tiles.size() < 2) {
+      return super.openBytes(no, buf, x, y, w, h);
+    }
+
+    final int series = getSeries();
+    final int plane = no;
+    List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+    for (int i=1; i<tiles.size(); i++) {
+      final Region tile = tiles.get(i);
+      results.add(getExecutor().submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws FormatException, IOException {
+          IFormatReader clone = borrowClone();
+          // read on the calling thread instead
+          if (clone == null) return null;
+          try {
+            clone.setSeries(series);
+            return clone.openBytes(plane,
+              tile.x, tile.y, tile.width, tile.height);
+          }
+          finally {
+            returnClone(clone);
+          }
+        }
+      }));
+    }
+
+    Region first = tiles.get(0);
+    copyTile(super.openBytes(no, first.x, first.y, first.width, first.height),
+      first, buf, x, y, w, h);
+    for (int i=1; i<tiles.size(); i++) {
+      byte[] tile;
+      try {
+        tile = results.get(i - 1).get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof FormatException) throw (FormatException) cause;
+        if (cause instanceof IOException) throw (IOException) cause;
+        throw new FormatException(cause);
+      }
+      Region t = tiles.get(i);
+      if (tile == null) {
+        tile = super.openBytes(no, t.x, t.y, t.width, t.height);
+      }
+      copyTile(tile, t, buf, x, y, w, h);
+    }
+    return buf;
+  }
+
+  @Override
+  public void close(boolean fileOnly) throws IOException {
+    if (!fileOnly) {
+      close();
+      return;
+    }
+    super.close(true);
+    synchronized (clones) {
+      for (IFormatReader clone : clones) {
+        clone.close(true);
+        closedClones.add(clone);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    synchronized (clones) {
+      for (IFormatReader clone : clones) clone.close();
+      clones.clear();
+      closedClones.clear();
+      tileSizes.clear();
+    }
+    synchronized (this) {
+      if (executor != null) executor.shutdown();
+      executor = null;
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Splits the given region of the current series along the tile grid,
+   * or returns null if the tile size is not known.
+   */
+  private List<Region> getTiles(Region region) {
+    int[] size = getTileSize(getSeries());
+    if (size == null) return null;
+    int tw = size[0], th = size[1];
+    List<Region> tiles = new ArrayList<Region>();
+    int endX = region.x + region.width, endY = region.y + region.height;
+    for (int ty=(region.y / th) * th; ty<endY; ty+=th) {
+      int y0 = Math.max(ty, region.y);
+      int y1 = Math.min(ty + th, endY);
+      for (int tx=(region.x / tw) * tw; tx<endX; tx+=tw) {
+        int x0 = Math.max(tx, region.x);
+        int x1 = Math.min(tx + tw, endX);
+        tiles.add(new Region(x0, y0, x1 - x0, y1 - y0));
+      }
+    }
+    return tiles;
+  }
+
+  /**
+   * Gets the size of the tiles stitched into the current series, from the
+   * wrapped stitcher's own underlying reader.
+   */
+  private int[] getTileSize(int series) {
+    synchronized (clones) {
+      if (tileSizes.containsKey(series)) return tileSizes.get(series);
+    }
+    int[] size = null;
+    IFormatReader stitcher = getReader();
+    if (stitcher instanceof ReaderWrapper) {
+      // the stitcher's underlying series are the individual tiles
+      IFormatReader tiles = ((ReaderWrapper) stitcher).getReader();
+      int sizeX = stitcher.getSizeX(), sizeY = stitcher.getSizeY();
+      int tw = tiles.getSizeX(), th = tiles.getSizeY();
+      if (tw > 0 && th > 0 && (tw < sizeX || th < sizeY)) {
+        size = new int[] {tw, th};
+      }
+    }
+    synchronized (clones) {
+      tileSizes.put(series, size);
+    }
+    return size;
+  }
+
+  /** Copies a tile read from the given region into the requested region. */
+  private void copyTile(byte[] tile, Region t, byte[] buf,
+    int x, int y, int w, int h)
+  {
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    int c = getRGBChannelCount();
+    if (isInterleaved()) {
+      int rowBytes = t.width * bpp * c;
+      for (int row=0; row<t.height; row++) {
+        int src = row * rowBytes;
+        int dest = ((t.y - y + row) * w + (t.x - x)) * bpp * c;
+        System.arraycopy(tile, src, buf, dest, rowBytes);
+      }
+    }
+    else {
+      int rowBytes = t.width * bpp;
+      for (int ch=0; ch<c; ch++) {
+        for (int row=0; row<t.height; row++) {
+          int src = (ch * t.height + row) * rowBytes;
+          int dest = ((ch * h + t.y - y + row) * w + (t.x - x)) * bpp;
+          System.arraycopy(tile, src, buf, dest, rowBytes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets a copy of the reader stack for exclusive use, or null if copies
+   * cannot be created.
+   */
+  private IFormatReader borrowClone() {
+    IFormatReader clone = null;
+    boolean reopen = false;
+    synchronized (clones) {
+      if (!clones.isEmpty()) {
+        clone = clones.remove(clones.size() - 1);
+        reopen = closedClones.remove(clone);
+      }
+    }
+    // reopen or create copies outside the lock, so that other threads can
+    // borrow idle copies meanwhile
+    if (clone == null) return createClone();
+    if (reopen) {
+      try {
+        clone.reopenFile();
+      }
+      catch (IOException e) {
+        BF.debug("Could not reopen tile reader: " + e.getMessage());
+        try {
+          clone.close();
+        }
+        catch (IOException exc) {
+          BF.debug("Could not close tile reader: " + exc.getMessage());
+        }
+        return createClone();
+      }
+    }
+    return clone;
+  }
+
+  private void returnClone(IFormatReader clone) {
+    if (clone == null) return;
+    synchronized (clones) {
+      clones.add(clone);
+    }
+  }
+
+  private IFormatReader createClone() {
+    if (!parallel) return null;
+    try {
+      return factory.createReader();
+    }
+    catch (FormatException e) {
+      BF.debug("Could not copy tile reader: " + e.getMessage());
+    }
+    catch (IOException e) {
+      BF.debug("Could not copy tile reader: " + e.getMessage());
+    }
+    parallel = false;
+    return null;
+  }
+
+  private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threadCount - 1,
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "BioFormats-TileReader");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+    return executor;
+  }
+
+  // -- Helper classes --
+
+  /** Creates independent, initialized copies of the wrapped reader. */
+  public interface ReaderFactory {
+    IFormatReader createReader() throws FormatException, IOException;
+  }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.IJ;
+import ij.process.ImageProcessor;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.ReaderWrapper;
+
+/**
+ * Process-wide cache of decoded planes, shared by every
+ * {@link BFVirtualStack} and {@link ImageProcessorSource}, so that opening
+ * the same dataset in several windows decodes each plane only once.
+ *
+ * Planes are keyed by file, reader configuration, series, resolution, plane
+ * index, region and {@link PlaneTransform}s; transformed planes are cached
+ * after the transforms are applied. All entries share a single memory budget
+ * of {@link LociPrefs#getPlaneCacheSize()} megabytes (at most a quarter of the
+ * available memory), beyond which the least recently used planes are
+ * discarded. Datasets are reference counted through {@link #retain(String)}
+ * and {@link #release(String)}; the planes of a dataset are discarded as
+ * soon as no open stack refers to it.
+ *
+ * Callers of {@link #openProcessor} receive a copy, so edits made in one
+ * window do not leak into another. The per-stack prefetch caches instead
+ * hold the shared processors themselves, through
+ * {@link #openSharedProcessor}, so that they do not keep their own copy of
+ * every plane outside the memory budget.
+ */
+public final class PlaneCache {
+
+  // -- Static fields --
+
+  /** Cached planes, in least recently used order. */
+  private static final LinkedHashMap<String, Entry> ENTRIES =
+    new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  /** Number of references to each dataset. */
+  private static final Map<String, Integer> REFERENCES =
+    new HashMap<String, Integer>();
+
+  /** Unique ids of the transforms used in keys. */
+  private static final Map<PlaneTransform, Long> TRANSFORM_IDS =
+    new WeakHashMap<PlaneTransform, Long>();
+
+  private static long totalBytes;
+  private static long nextTransformId;
+
+  // -- Constructor --
+
+  private PlaneCache() { }
+
+  // -- Utility methods --
+
+  /**
+   * Obtains a copy of the given plane of the reader's current series, from
+   * the cache if possible; otherwise the plane is read and cached.
+   */
+  public static ImageProcessor openProcessor(ImageProcessorReader r, int no)
+    throws FormatException, IOException
+  {
+    return openProcessor(r, no, 0, 0, r.getSizeX(), r.getSizeY());
+  }
+
+  /**
+   * Obtains a copy of the given region of the given plane of the reader's
+   * current series, from the cache if possible; otherwise the region is read
+   * and cached.
+   */
+  public static ImageProcessor openProcessor(ImageProcessorReader r, int no,
+    int x, int y, int w, int h) throws FormatException, IOException
+  {
+    return openProcessor(r, no, x, y, w, h, null);
+  }
+
+  /**
+   * Obtains a copy of the given region of the given plane of the reader's
+   * current series with the given transforms applied, from the cache if
+   * possible; otherwise the region is read, transformed and cached.
+   */
+  public static ImageProcessor openProcessor(ImageProcessorReader r, int no,
+    int x, int y, int w, int h, List<PlaneTransform> transforms)
+    throws FormatException, IOException
+  {
+    return open(r, no, x, y, w, h, transforms, true);
+  }
+
+  /**
+   * Obtains the given region of the given plane like
+   * {@link #openProcessor(ImageProcessorReader, int, int, int, int, int,
+   * List)}, but returns the cached processor itself rather than a copy.
+   * The result is shared and must not be modified.
+   */
+  public static ImageProcessor openSharedProcessor(ImageProcessorReader r,
+    int no, int x, int y, int w, int h, List<PlaneTransform> transforms)
+    throws FormatException, IOException
+  {
+    return open(r, no, x, y, w, h, transforms, false);
+  }
+
+  /** Registers a reference to the given dataset. */
+  public static synchronized void retain(String id) {
+    if (id == null) return;
+    Integer count = REFERENCES.get(id);
+    REFERENCES.put(id, count == null ? 1 : count + 1);
+  }
+
+  /**
+   * Removes a reference to the given dataset, discarding its cached planes
+   * if no references remain.
+   */
+  public static synchronized void release(String id) {
+    Integer count = id == null ? null : REFERENCES.get(id);
+    if (count == null) return;
+    if (count > 1) {
+      REFERENCES.put(id, count - 1);
+      return;
+    }
+    REFERENCES.remove(id);
+    Iterator<Entry> it = ENTRIES.values().iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next();
+      if (entry.id.equals(id)) {
+        totalBytes -= entry.bytes;
+        it.remove();
+      }
+    }
+  }
+
+  /** Gets the number of bytes currently used by cached planes. */
+  public static synchronized long getSize() {
+    return totalBytes;
+  }
+
+  /** Discards all cached planes; references are kept. */
+  public static synchronized void clear() {
+    ENTRIES.clear();
+    totalBytes = 0;
+  }
+
+  // -- Helper methods --
+
+  private static ImageProcessor open(ImageProcessorReader r, int no,
+    int x, int y, int w, int h, List<PlaneTransform> transforms,
+    boolean copy) throws FormatException, IOException
+  {
+    String id = r.getCurrentFile();
+    String key = id == null ? null : getKey(r, no, x, y, w, h, transforms);
+    if (key != null) {
+      ImageProcessor ip = get(key, copy);
+      if (ip != null) return ip;
+    }
+
+    ImageProcessor ip = r.openProcessors(no, x, y, w, h)[0];
+    if (transforms != null) {
+      for (PlaneTransform transform : transforms) {
+        ip = transform.transform(ip, r, no);
+      }
+    }
+    if (key != null) put(id, key, ip);
+    return key == null || !copy ? ip : ip.duplicate();
+  }
+
+  private static synchronized ImageProcessor get(String key, boolean copy) {
+    Entry entry = ENTRIES.get(key);
+    if (entry == null) return null;
+    return copy ? entry.ip.duplicate() : entry.ip;
+  }
+
+  /**
+   * Gets the unique id of the given transform, assigning one on first use.
+   * Ids are never reused, so keys of different transforms never collide.
+   */
+  private static synchronized long getTransformId(PlaneTransform transform) {
+    Long id = TRANSFORM_IDS.get(transform);
+    if (id == null) {
+      id = nextTransformId++;
+      TRANSFORM_IDS.put(transform, id);
+    }
+    return id;
+  }
+
+  private static synchronized void put(String id, String key,
+    ImageProcessor ip)
+  {
+    long max = getMaxBytes();
+    long bytes = getBytes(ip);
+    if (bytes > max || !REFERENCES.containsKey(id)) return;
+
+    Entry old = ENTRIES.put(key, new Entry(id, ip, bytes));
+    if (old != null) totalBytes -= old.bytes;
+    totalBytes += bytes;
+
+    Iterator<Entry> it = ENTRIES.values().iterator();
+    while (totalBytes > max && it.hasNext()) {
+      totalBytes -= it.next().bytes;
+      it.remove();
+    }
+  }
+
+  private static long getMaxBytes() {
+    long max = LociPrefs.getPlaneCacheSize() * 1024L * 1024L;
+    return Math.min(max, IJ.maxMemory() / 4);
+  }
+
+  private static long getBytes(ImageProcessor ip) {
+    int bitDepth = ip.getBitDepth();
+    int bytesPerPixel = bitDepth == 24 ? 4 : Math.max(1, bitDepth / 8);
+    return (long) ip.getPixelCount() * bytesPerPixel;
+  }
+
+  /**
+   * Gets the key for the given region. Readers are compared by the wrappers
+   * that may change the meaning of a plane index or the plane contents, as
+   * well as by the resulting dimensions; transforms are compared by their
+   * unique ids.
+   */
+  private static String getKey(IFormatReader r, int no,
+    int x, int y, int w, int h, List<PlaneTransform> transforms)
+  {
+    StringBuilder sb = new StringBuilder(r.getCurrentFile());
+    for (IFormatReader reader = r; reader instanceof ReaderWrapper;
+      reader = ((ReaderWrapper) reader).getReader())
+    {
+      if (!(reader instanceof ImageProcessorReader)) {
+        sb.append("|").append(reader.getClass().getName());
+      }
+    }
+    sb.append("|").append(r.getDimensionOrder());
+    sb.append("|").append(r.getImageCount());
+    sb.append("|").append(r.getRGBChannelCount());
+    sb.append("|").append(r.getSeries());
+    sb.append("|").append(r.getResolution());
+    sb.append("|").append(no);
+    sb.append("|").append(x).append(",").append(y);
+    sb.append(",").append(w).append("x").append(h);
+    if (transforms != null) {
+      for (PlaneTransform transform : transforms) {
+        sb.append("|").append(transform.getClass().getName());
+        sb.append("#").append(getTransformId(transform));
+      }
+    }
+    return sb.toString();
+  }
+
+  // -- Helper classes --
+
+  private static class Entry {
+    private final String id;
+    private final ImageProcessor ip;
+    private final long bytes;
+
+    private Entry(String id, ImageProcessor ip, long bytes) {
+      this.id = id;
+      this.ip = ip;
+      this.bytes = bytes;
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.process.ImageProcessor;
+
+import loci.formats.IFormatReader;
+
+/**
+ * A per-plane operation applied by the importer to each plane right after
+ * it is decoded, before it is stacked or cached; for example background
+ * subtraction, flat-field correction or conversion to a smaller type.
+ *
+ * Transforms are registered with
+ * {@link loci.plugins.in.ImporterOptions#addPlaneTransform(PlaneTransform)}
+ * and run on the thread that decoded the plane, so an implementation may be
+ * called from several threads at once and must be thread-safe.
+ */
+public interface PlaneTransform {
+
+  /**
+   * Transforms the given plane.
+   *
+   * @param ip The decoded plane, already cropped and binned as requested
+   *   by the import options. It may be modified in place.
+   * @param reader The reader from which the plane was read, set to the
+   *   plane's series. It must not be used to read pixels.
+   * @param no The index of the plane within the reader's current series.
+   * @return The transformed plane: either ip itself or a new processor of
+   *   the same width and height, possibly of a different type.
+   */
+  ImageProcessor transform(ImageProcessor ip, IFormatReader reader, int no);
+
+}
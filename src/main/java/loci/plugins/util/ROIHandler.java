@@ -46,12 +46,21 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import loci.formats.MetadataTools;
 import loci.formats.meta.IMetadata;
 import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEXMLMetadata;
+import loci.plugins.in.ImagePlusReader;
 import loci.plugins.in.ImporterOptions;
 import ome.units.quantity.Length;
 import ome.units.UNITS;
@@ -76,6 +85,11 @@ import ome.xml.model.primitives.NonNegativeInteger;
  */
 public class ROIHandler {
 
+  // -- Constants --
+
+  /** Minimum number of ROIs converted by each thread when importing. */
+  private static final int MIN_ROIS_PER_THREAD = 1000;
+
   // -- ROIHandler API methods --
 
   /**
@@ -111,326 +125,59 @@ public class ROIHandler {
   public static void openROIs(IMetadata retrieve, ImagePlus[] images,
           boolean isOMERO, String roisMode) {
     if (!(retrieve instanceof OMEXMLMetadata)) return;
-    int nextRoi = 0;
-    RoiManager manager = RoiManager.getInstance();
-
     OME root = (OME) retrieve.getRoot();
-    Roi roi;
-    Float sw;
-    Color sc;
-    Color fc;
-
-    int imageCount = images.length;
-    for (int imageNum=0; imageNum<imageCount; imageNum++) {
-      int roiCount = root.sizeOfROIList();
-      if (roiCount > 0 && manager == null
-    		  && roisMode.equals(ImporterOptions.ROIS_MODE_MANAGER)) {
-        manager = new RoiManager();
-      }
-
-      for (int roiNum = 0; roiNum < roiCount; roiNum++) {
-        Union shapeSet = root.getROI(roiNum).getUnion();
-        int shapeCount = shapeSet.sizeOfShapeList();
-
-        for (int shape = 0; shape<shapeCount; shape++) {
-          Shape shapeObject = shapeSet.getShape(shape);
-
-          roi = null;
-          sw = null;
-          sc = null;
-          fc = null;
-          int c = 0;
-          int z = 0;
-          int t = 0;
-
-          if (shapeObject instanceof Ellipse) {
-            Ellipse ellipse = (Ellipse) shapeObject;
-            int cx = ellipse.getX().intValue();
-            int cy = ellipse.getY().intValue();
-            int rx = ellipse.getRadiusX().intValue();
-            int ry = ellipse.getRadiusY().intValue();
-            roi = new OvalRoi(cx - rx, cy - ry, rx * 2, ry * 2);
-
-            if (ellipse.getStrokeColor() != null) {
-              ome.xml.model.primitives.Color StrokeColor = ellipse.getStrokeColor();
-              sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
-                    StrokeColor.getBlue(),StrokeColor.getAlpha());
-              if (isOMERO) {
-                sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
-                    StrokeColor.getAlpha(), StrokeColor.getRed());
-              }
-            }
-            if (ellipse.getFillColor() != null) {
-              ome.xml.model.primitives.Color FillColor = ellipse.getFillColor();
-              fc = new Color(FillColor.getRed(), FillColor.getGreen(),
-                    FillColor.getBlue(), FillColor.getAlpha());
-              if (isOMERO) {
-                fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
-                      FillColor.getAlpha(), FillColor.getRed());
-              }
-            }
-            if (ellipse.getStrokeWidth() != null) {
-              sw = ellipse.getStrokeWidth().value().floatValue();
-            }
-          }
-          else if (shapeObject instanceof ome.xml.model.Line) {
-            ome.xml.model.Line line = (ome.xml.model.Line) shapeObject;
-            int x1 = line.getX1().intValue();
-            int x2 = line.getX2().intValue();
-            int y1 = line.getY1().intValue();
-            int y2 = line.getY2().intValue();
-            roi = new Line(x1, y1, x2, y2);
-
-            if (line.getStrokeColor() != null) {
-              ome.xml.model.primitives.Color StrokeColor = line.getStrokeColor();
-              sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
-                    StrokeColor.getBlue(), StrokeColor.getAlpha());
-              if (isOMERO) {
-                sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
-                      StrokeColor.getAlpha(), StrokeColor.getRed());
-              }
-            }
-            if (line.getFillColor() != null) {
-              ome.xml.model.primitives.Color FillColor = line.getFillColor();
-              fc = new Color(FillColor.getRed(), FillColor.getGreen(),
-                    FillColor.getBlue(),FillColor.getAlpha());
-              if (isOMERO) {
-                fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
-                        FillColor.getAlpha(), FillColor.getRed());
-              }
-            }
-            if (line.getStrokeWidth() != null) {
-              sw = line.getStrokeWidth().value().floatValue();
-            }
-          }
-          else if (shapeObject instanceof Point) {
-            Point point = (Point) shapeObject;
-            int x = point.getX().intValue();
-            int y = point.getY().intValue();
-            roi = new PointRoi(x, y);
-
-            if (point.getStrokeColor() != null){
-              ome.xml.model.primitives.Color StrokeColor = point.getStrokeColor();
-              sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
-                    StrokeColor.getBlue(), StrokeColor.getAlpha());
-              if (isOMERO) {
-                sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
-                      StrokeColor.getAlpha(), StrokeColor.getRed());
-              }
-            }
-            if (point.getFillColor() != null){
-              ome.xml.model.primitives.Color FillColor = point.getFillColor();
-              fc = new Color(FillColor.getRed(), FillColor.getGreen(),
-                      FillColor.getBlue(), FillColor.getAlpha());
-              if (isOMERO) {
-                fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
-                        FillColor.getAlpha(), FillColor.getRed());
-              }
-            }
-            if (point.getStrokeWidth() != null){
-              sw = point.getStrokeWidth().value().floatValue();
-            }
-          }
-          else if (shapeObject instanceof Polyline) {
-            Polyline polyline = (Polyline) shapeObject;
-            String points = polyline.getPoints();
-            int[][] coordinates = parsePoints(points);
-            roi = new PolygonRoi(coordinates[0], coordinates[1],
-                coordinates[0].length, Roi.POLYLINE);
-
-            if (polyline.getStrokeColor() != null){
-              ome.xml.model.primitives.Color StrokeColor = polyline.getStrokeColor();
-              sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
-                    StrokeColor.getBlue(), StrokeColor.getAlpha());
-              if (isOMERO) {
-                sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
-                      StrokeColor.getAlpha(), StrokeColor.getRed());
-              }
-            }
-            if (polyline.getFillColor() != null){
-              ome.xml.model.primitives.Color FillColor = polyline.getFillColor();
-              fc = new Color(FillColor.getRed(), FillColor.getGreen(),
-                    FillColor.getBlue(), FillColor.getAlpha());
-              if (isOMERO) {
-                fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
-                      FillColor.getAlpha(), FillColor.getRed());
-              }
-            }
-            if (polyline.getStrokeWidth() != null){
-              sw = polyline.getStrokeWidth().value().floatValue();
-            }
-          }
-          else if (shapeObject instanceof Polygon) {
-            Polygon polygon = (Polygon) shapeObject;
-            String points = polygon.getPoints();
-            int[][] coordinates = parsePoints(points);
-            roi = new PolygonRoi(coordinates[0], coordinates[1],
-                coordinates[0].length, Roi.POLYGON);
-
-            if (polygon.getStrokeColor() != null){
-              ome.xml.model.primitives.Color StrokeColor = polygon.getStrokeColor();
-              sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
-                    StrokeColor.getBlue(), StrokeColor.getAlpha());
-              if (isOMERO) {
-                sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
-                      StrokeColor.getAlpha(), StrokeColor.getRed());
-              }
-            }
-            if (polygon.getFillColor() != null){
-              ome.xml.model.primitives.Color FillColor = polygon.getFillColor();
-              fc = new Color(FillColor.getRed(), FillColor.getGreen(),
-                    FillColor.getBlue(), FillColor.getAlpha());
-              if (isOMERO) {
-                fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
-                      FillColor.getAlpha(), FillColor.getRed());
-              }
-            }
-            if (polygon.getStrokeWidth() != null){
-              sw = polygon.getStrokeWidth().value().floatValue();
-            }
-          }
-          else if (shapeObject instanceof ome.xml.model.Label){
-            //add support for TextROI's
-            ome.xml.model.Label label =
-            (ome.xml.model.Label) shapeObject;
-                double x = label.getX().doubleValue();
-                double y = label.getY().doubleValue();
-                String labelText = label.getText();
-
-                int size = label.getFontSize().value().intValue();
-                Font font = new Font(labelText, Font.PLAIN, size);
-                roi = new TextRoi((int) x,(int) y, labelText,font);
-
-                if (label.getStrokeColor() != null) {
-                  ome.xml.model.primitives.Color StrokeColor = label.getStrokeColor();
-                  sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
-                        StrokeColor.getBlue(), StrokeColor.getAlpha());
-                  if (isOMERO) {
-                    sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
-                          StrokeColor.getAlpha(), StrokeColor.getRed());
-                  }
-                }
-                if (label.getFillColor() != null) {
-                  ome.xml.model.primitives.Color FillColor = label.getFillColor();
-                  fc = new Color(FillColor.getRed(), FillColor.getGreen(),
-                          FillColor.getBlue(), FillColor.getAlpha());
-                  if (isOMERO) {
-                    fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
-                          FillColor.getAlpha(), FillColor.getRed());
-                  }
-                }
-                if (label.getStrokeWidth() != null) {
-                  sw = label.getStrokeWidth().value().floatValue();
-                }
+    int roiCount = root.sizeOfROIList();
+    if (roiCount == 0) return;
 
-          }
-          else if (shapeObject instanceof ome.xml.model.Rectangle) {
-            ome.xml.model.Rectangle rectangle =
-                (ome.xml.model.Rectangle) shapeObject;
-            int x = rectangle.getX().intValue();
-            int y = rectangle.getY().intValue();
-            int w = rectangle.getWidth().intValue();
-            int h = rectangle.getHeight().intValue();
-
-            roi = new Roi(x, y, w, h);
-
-            if (rectangle.getStrokeColor() != null){
-              ome.xml.model.primitives.Color StrokeColor = rectangle.getStrokeColor();
-              sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
-                    StrokeColor.getBlue(), StrokeColor.getAlpha());
-              if (isOMERO) {
-                sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
-                        StrokeColor.getAlpha(), StrokeColor.getRed());
-              }
-            }
-            if (rectangle.getFillColor() != null){
-              ome.xml.model.primitives.Color FillColor = rectangle.getFillColor();
-              fc = new Color(FillColor.getRed(), FillColor.getGreen(),
-                    FillColor.getBlue(), FillColor.getAlpha());
-              if (isOMERO) {
-                fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
-                      FillColor.getAlpha(), FillColor.getRed());
-              }
-            }
-            if (rectangle.getStrokeWidth() != null){
-              sw = rectangle.getStrokeWidth().value().floatValue();
-            }
-          }
+    // convert all shapes once, in parallel
+    ImportedRoi[][] rois = createRois(root, isOMERO);
 
-          if (roi != null) {
-            String roiLabel = shapeObject.getText();
-            if (roiLabel == null) {
-              roiLabel = shapeObject.getID();
-            }
-            roi.setName(roiLabel);
+    // map each ROI to the images of the series that reference it
+    List<List<ImagePlus>> targets = getTargetImages(retrieve, images, root);
 
-            if (Prefs.showAllSliceOnly) {
-              if (shapeObject.getTheC() != null) {
-                c = shapeObject.getTheC().getValue();
-              }
-              if (shapeObject.getTheZ() != null) {
-                z = shapeObject.getTheZ().getValue();
-              }
-              if (shapeObject.getTheT() != null) {
-                t = shapeObject.getTheT().getValue();
-              }
-              // ImageJ expects 1-based indexing, opposed to 
-              // 0-based indexing in OME
-              // Roi positions differ between hyperstacks and normal stacks
-              ImagePlus imp = images[imageNum];
-              if (imp.getNChannels() > 1) {
-                c++;
-              }
-              if (imp.getNSlices() > 1) {
-                z++;
-              }
-              if (imp.getNFrames() > 1) {
-                t++;
-              }
-              if (c == 0) c = 1;
-              if (t == 0) t = 1;
-              if (z == 0) z = 1;
-              if (imp.getNChannels() == 1 && imp.getNSlices() == 1) {
-                roi.setPosition(t);
-              } else if (imp.getNChannels() == 1 && imp.getNFrames() == 1) {
-                roi.setPosition(z);
-              } else if (imp.getNSlices() == 1 && imp.getNFrames() == 1) {
-                roi.setPosition(c);
-              } else if (imp.isHyperStack()) {
-                roi.setPosition(c, z, t);
-              }
-            }
+    // collect the ROIs of each image, so that they can be added in bulk
+    Map<ImagePlus, List<Roi>> imageRois =
+      new LinkedHashMap<ImagePlus, List<Roi>>();
+    for (ImagePlus imp : images) imageRois.put(imp, new ArrayList<Roi>());
+    for (int roiNum=0; roiNum<roiCount; roiNum++) {
+      List<ImagePlus> target = targets.get(roiNum);
+      for (int i=0; i<target.size(); i++) {
+        ImagePlus imp = target.get(i);
+        for (ImportedRoi shape : rois[roiNum]) {
+          if (shape == null) continue;
+          // the first image gets the original; others need their own copy
+          Roi roi = i == 0 ? shape.roi : (Roi) shape.roi.clone();
+          if (Prefs.showAllSliceOnly) setPosition(roi, shape, imp);
+          imageRois.get(imp).add(roi);
+        }
+      }
+    }
 
-            if (sw == null) {
-              roi.setStrokeWidth((float) 1);
-            }
-            if (sw != null) {
-              if (sw == 0) {
-                sw = (float) 1;
-              }
-              roi.setStrokeWidth(sw);
-            }
-            if (sc != null) {
-              roi.setStrokeColor(sc);
-            }
-            
-            if (roisMode.equals(ImporterOptions.ROIS_MODE_MANAGER)) {
-                manager.add(images[imageNum], roi, nextRoi++);
-            } else if (roisMode.equals(ImporterOptions.ROIS_MODE_OVERLAY)) {
-                Overlay overlay = images[imageNum].getOverlay();                        
-                if (overlay == null) {
-                    overlay = new Overlay(roi);
-                    images[imageNum].setOverlay(overlay);
-                } else {
-                    overlay.add(roi);
-                }
-            }
-          }
+    if (roisMode.equals(ImporterOptions.ROIS_MODE_MANAGER)) {
+      RoiManager manager = RoiManager.getInstance();
+      if (manager == null) manager = new RoiManager();
+      // hide the manager while adding, to avoid updating it for every ROI
+      boolean visible = manager.isVisible();
+      manager.setVisible(false);
+      int nextRoi = 0;
+      for (Map.Entry<ImagePlus, List<Roi>> entry : imageRois.entrySet()) {
+        for (Roi roi : entry.getValue()) {
+          manager.add(entry.getKey(), roi, nextRoi++);
         }
       }
-      if (roiCount > 0 && manager != null) {
-        manager.setAlwaysOnTop(true);
-        manager.runCommand("show all with labels");
+      manager.setVisible(visible || nextRoi > 0);
+      manager.setAlwaysOnTop(true);
+      manager.runCommand("show all with labels");
+    }
+    else if (roisMode.equals(ImporterOptions.ROIS_MODE_OVERLAY)) {
+      for (Map.Entry<ImagePlus, List<Roi>> entry : imageRois.entrySet()) {
+        if (entry.getValue().isEmpty()) continue;
+        ImagePlus imp = entry.getKey();
+        Overlay overlay = imp.getOverlay();
+        if (overlay == null) overlay = new Overlay();
+        for (Roi roi : entry.getValue()) overlay.add(roi);
+        // setting the overlay once repaints the image once
+        imp.setOverlay(overlay);
       }
     }
   }
@@ -507,12 +254,12 @@ public class ROIHandler {
         }
       }
       if (ijRoi.isDrawingTool()) {//Checks if the given roi is a Text box/Arrow/Rounded Rectangle
-        if (ijRoi.getTypeAsString().matches("Text")) {
+        if (ijRoi.getTypeAsString().equals("Text")) {
           if (ijRoi instanceof TextRoi){
             store.setLabelID(polylineID, cntr, 0);
             storeText((TextRoi) ijRoi, store, cntr, 0, c, z, t);
           }
-        } else if (ijRoi.getTypeAsString().matches("Rectangle")) {
+        } else if (ijRoi.getTypeAsString().equals("Rectangle")) {
           if (ijRoi instanceof Roi) {
             store.setRectangleID(polylineID, cntr, 0);
             storeRectangle(ijRoi, store, cntr, 0, c, z, t);
@@ -536,18 +283,18 @@ public class ROIHandler {
           IJ.log("ROI ID : " + type + " ROI type : " +  "Arrow (Drawing Tool) is not supported");
         }
       } else if (ijRoi instanceof PolygonRoi || ijRoi instanceof EllipseRoi) {
-        if (ijRoi.getTypeAsString().matches("Polyline") ||
-            ijRoi.getTypeAsString().matches("Freeline") ||
-            ijRoi.getTypeAsString().matches("Angle")) {
+        if (ijRoi.getTypeAsString().equals("Polyline") ||
+            ijRoi.getTypeAsString().equals("Freeline") ||
+            ijRoi.getTypeAsString().equals("Angle")) {
           store.setPolylineID(polylineID, cntr, 0);
           storePolygon((PolygonRoi) ijRoi, store, cntr, 0, c, z, t);
-        } else if (ijRoi.getTypeAsString().matches("Point")) {
+        } else if (ijRoi.getTypeAsString().equals("Point")) {
           store.setPointID(polylineID, cntr, 0);
           storePoint((PointRoi) ijRoi, store, cntr, 0, c, z, t);
-        } else if (ijRoi.getTypeAsString().matches("Polygon") ||
-            ijRoi.getTypeAsString().matches("Freehand") ||
-            ijRoi.getTypeAsString().matches("Traced") ||
-            ijRoi.getTypeAsString().matches("Oval")) {
+        } else if (ijRoi.getTypeAsString().equals("Polygon") ||
+            ijRoi.getTypeAsString().equals("Freehand") ||
+            ijRoi.getTypeAsString().equals("Traced") ||
+            ijRoi.getTypeAsString().equals("Oval")) {
           store.setPolygonID(polylineID, cntr, 0);
           storePolygon((PolygonRoi) ijRoi, store, cntr, 0, c, z, t);
         }
@@ -558,12 +305,12 @@ public class ROIHandler {
           roiID = MetadataTools.createLSID("ROI", cntr, q);
           Roi ijShape = subRois[q];
           if (ijShape.isDrawingTool()) {//Checks if the given roi is a Text box/Arrow/Rounded Rectangle
-            if (ijShape.getTypeAsString().matches("Text")) {
+            if (ijShape.getTypeAsString().equals("Text")) {
               if (ijShape instanceof TextRoi) {
                 store.setLabelID(polylineID, cntr, q);
                 storeText((TextRoi) ijShape, store, cntr, q, c, z, t);
               }
-            } else if (ijShape.getTypeAsString().matches("Rectangle")) {
+            } else if (ijShape.getTypeAsString().equals("Rectangle")) {
               if (ijShape instanceof Roi) {
                 store.setRectangleID(polylineID, cntr, q);
                 storeRectangle(ijShape, store, cntr, q, c, z, t);
@@ -588,22 +335,22 @@ public class ROIHandler {
             store.setEllipseID(polylineID, cntr, q);
             storeOval((OvalRoi) ijShape, store, cntr, q, c, z, t);
           } else if (ijShape instanceof PolygonRoi || ijShape instanceof EllipseRoi) {
-            if (ijShape.getTypeAsString().matches("Polyline") ||
-                ijShape.getTypeAsString().matches("Freeline") ||
-                ijShape.getTypeAsString().matches("Angle")) {
+            if (ijShape.getTypeAsString().equals("Polyline") ||
+                ijShape.getTypeAsString().equals("Freeline") ||
+                ijShape.getTypeAsString().equals("Angle")) {
               store.setPolylineID(polylineID, cntr, q);
               storePolygon((PolygonRoi) ijShape, store, cntr, q, c, z, t);
-            } else if (ijShape.getTypeAsString().matches("Point")) {
+            } else if (ijShape.getTypeAsString().equals("Point")) {
               store.setPointID(polylineID, cntr, q);
               storePoint((PointRoi) ijShape, store, cntr, q, c, z, t);
-            } else if (ijShape.getTypeAsString().matches("Polygon") ||
-                ijShape.getTypeAsString().matches("Freehand") ||
-                ijShape.getTypeAsString().matches("Traced") ||
-                ijShape.getTypeAsString().matches("Oval")) {
+            } else if (ijShape.getTypeAsString().equals("Polygon") ||
+                ijShape.getTypeAsString().equals("Freehand") ||
+                ijShape.getTypeAsString().equals("Traced") ||
+                ijShape.getTypeAsString().equals("Oval")) {
               store.setPolygonID(polylineID, cntr, q);
               storePolygon((PolygonRoi) ijShape, store, cntr, q, c, z, t);
             }
-          } else if (ijShape.getTypeAsString().matches("Rectangle")) {
+          } else if (ijShape.getTypeAsString().equals("Rectangle")) {
             store.setRectangleID(polylineID, cntr, q);
             storeRectangle(ijShape, store, cntr, q, c, z, t);
           } else {
@@ -612,7 +359,7 @@ public class ROIHandler {
             IJ.log("ROI ID : " + type + " ROI type : " + ijShape.getTypeAsString() + "is not supported");
           }
         }
-      } else if (ijRoi.getTypeAsString().matches("Rectangle")) {//Check if its a Rectangle or Rounded Rectangle ROI
+      } else if (ijRoi.getTypeAsString().equals("Rectangle")) {//Check if its a Rectangle or Rounded Rectangle ROI
         store.setRectangleID(polylineID, cntr, 0);
         storeRectangle(ijRoi, store, cntr, 0, c, z, t);
       } else {
@@ -630,6 +377,410 @@ public class ROIHandler {
     }
   }
 
+  // -- Helper methods - ROI import --
+
+  /**
+   * Converts the shapes of every ROI to ImageJ ROIs. Large ROI lists are
+   * divided between several threads.
+   */
+  private static ImportedRoi[][] createRois(final OME root,
+    final boolean isOMERO)
+  {
+    final int roiCount = root.sizeOfROIList();
+    final ImportedRoi[][] rois = new ImportedRoi[roiCount][];
+    int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+      roiCount / MIN_ROIS_PER_THREAD);
+    if (threads <= 1) {
+      createRois(root, isOMERO, rois, 0, roiCount);
+      return rois;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> results = new ArrayList<Future<?>>();
+    int chunk = (roiCount + threads - 1) / threads;
+    for (int start=0; start<roiCount; start+=chunk) {
+      final int first = start;
+      final int last = Math.min(roiCount, start + chunk);
+      results.add(pool.submit(new Runnable() {
+        @Override
+        public void run() {
+          createRois(root, isOMERO, rois, first, last);
+        }
+      }));
+    }
+    try {
+      for (Future<?> result : results) result.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      IJ.handleException(e.getCause());
+    }
+    finally {
+      pool.shutdownNow();
+    }
+    // any ROIs which could not be converted are skipped
+    for (int i=0; i<roiCount; i++) {
+      if (rois[i] == null) rois[i] = new ImportedRoi[0];
+    }
+    return rois;
+  }
+
+  private static void createRois(OME root, boolean isOMERO,
+    ImportedRoi[][] rois, int first, int last)
+  {
+    for (int roiNum=first; roiNum<last; roiNum++) {
+      Union shapeSet = root.getROI(roiNum).getUnion();
+      int shapeCount = shapeSet == null ? 0 : shapeSet.sizeOfShapeList();
+      ImportedRoi[] shapes = new ImportedRoi[shapeCount];
+      for (int shape=0; shape<shapeCount; shape++) {
+        Shape shapeObject = shapeSet.getShape(shape);
+        Roi roi = createRoi(shapeObject, isOMERO);
+        if (roi != null) shapes[shape] = new ImportedRoi(roi, shapeObject);
+      }
+      rois[roiNum] = shapes;
+    }
+  }
+
+  /** Converts a single shape to an ImageJ ROI, or returns null. */
+  private static Roi createRoi(Shape shapeObject, boolean isOMERO) {
+    Roi roi = null;
+    Float sw = null;
+    Color sc = null;
+    Color fc = null;
+
+    if (shapeObject instanceof Ellipse) {
+      Ellipse ellipse = (Ellipse) shapeObject;
+      int cx = ellipse.getX().intValue();
+      int cy = ellipse.getY().intValue();
+      int rx = ellipse.getRadiusX().intValue();
+      int ry = ellipse.getRadiusY().intValue();
+      roi = new OvalRoi(cx - rx, cy - ry, rx * 2, ry * 2);
+
+      if (ellipse.getStrokeColor() != null) {
+        ome.xml.model.primitives.Color StrokeColor = ellipse.getStrokeColor();
+        sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
+              StrokeColor.getBlue(),StrokeColor.getAlpha());
+        if (isOMERO) {
+          sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
+              StrokeColor.getAlpha(), StrokeColor.getRed());
+        }
+      }
+      if (ellipse.getFillColor() != null) {
+        ome.xml.model.primitives.Color FillColor = ellipse.getFillColor();
+        fc = new Color(FillColor.getRed(), FillColor.getGreen(),
+              FillColor.getBlue(), FillColor.getAlpha());
+        if (isOMERO) {
+          fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
+                FillColor.getAlpha(), FillColor.getRed());
+        }
+      }
+      if (ellipse.getStrokeWidth() != null) {
+        sw = ellipse.getStrokeWidth().value().floatValue();
+      }
+    }
+    else if (shapeObject instanceof ome.xml.model.Line) {
+      ome.xml.model.Line line = (ome.xml.model.Line) shapeObject;
+      int x1 = line.getX1().intValue();
+      int x2 = line.getX2().intValue();
+      int y1 = line.getY1().intValue();
+      int y2 = line.getY2().intValue();
+      roi = new Line(x1, y1, x2, y2);
+
+      if (line.getStrokeColor() != null) {
+        ome.xml.model.primitives.Color StrokeColor = line.getStrokeColor();
+        sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
+              StrokeColor.getBlue(), StrokeColor.getAlpha());
+        if (isOMERO) {
+          sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
+                StrokeColor.getAlpha(), StrokeColor.getRed());
+        }
+      }
+      if (line.getFillColor() != null) {
+        ome.xml.model.primitives.Color FillColor = line.getFillColor();
+        fc = new Color(FillColor.getRed(), FillColor.getGreen(),
+              FillColor.getBlue(),FillColor.getAlpha());
+        if (isOMERO) {
+          fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
+                  FillColor.getAlpha(), FillColor.getRed());
+        }
+      }
+      if (line.getStrokeWidth() != null) {
+        sw = line.getStrokeWidth().value().floatValue();
+      }
+    }
+    else if (shapeObject instanceof Point) {
+      Point point = (Point) shapeObject;
+      int x = point.getX().intValue();
+      int y = point.getY().intValue();
+      roi = new PointRoi(x, y);
+
+      if (point.getStrokeColor() != null){
+        ome.xml.model.primitives.Color StrokeColor = point.getStrokeColor();
+        sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
+              StrokeColor.getBlue(), StrokeColor.getAlpha());
+        if (isOMERO) {
+          sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
+                StrokeColor.getAlpha(), StrokeColor.getRed());
+        }
+      }
+      if (point.getFillColor() != null){
+        ome.xml.model.primitives.Color FillColor = point.getFillColor();
+        fc = new Color(FillColor.getRed(), FillColor.getGreen(),
+                FillColor.getBlue(), FillColor.getAlpha());
+        if (isOMERO) {
+          fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
+                  FillColor.getAlpha(), FillColor.getRed());
+        }
+      }
+      if (point.getStrokeWidth() != null){
+        sw = point.getStrokeWidth().value().floatValue();
+      }
+    }
+    else if (shapeObject instanceof Polyline) {
+      Polyline polyline = (Polyline) shapeObject;
+      String points = polyline.getPoints();
+      int[][] coordinates = parsePoints(points);
+      roi = new PolygonRoi(coordinates[0], coordinates[1],
+          coordinates[0].length, Roi.POLYLINE);
+
+      if (polyline.getStrokeColor() != null){
+        ome.xml.model.primitives.Color StrokeColor = polyline.getStrokeColor();
+        sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
+              StrokeColor.getBlue(), StrokeColor.getAlpha());
+        if (isOMERO) {
+          sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
+                StrokeColor.getAlpha(), StrokeColor.getRed());
+        }
+      }
+      if (polyline.getFillColor() != null){
+        ome.xml.model.primitives.Color FillColor = polyline.getFillColor();
+        fc = new Color(FillColor.getRed(), FillColor.getGreen(),
+              FillColor.getBlue(), FillColor.getAlpha());
+        if (isOMERO) {
+          fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
+                FillColor.getAlpha(), FillColor.getRed());
+        }
+      }
+      if (polyline.getStrokeWidth() != null){
+        sw = polyline.getStrokeWidth().value().floatValue();
+      }
+    }
+    else if (shapeObject instanceof Polygon) {
+      Polygon polygon = (Polygon) shapeObject;
+      String points = polygon.getPoints();
+      int[][] coordinates = parsePoints(points);
+      roi = new PolygonRoi(coordinates[0], coordinates[1],
+          coordinates[0].length, Roi.POLYGON);
+
+      if (polygon.getStrokeColor() != null){
+        ome.xml.model.primitives.Color StrokeColor = polygon.getStrokeColor();
+        sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
+              StrokeColor.getBlue(), StrokeColor.getAlpha());
+        if (isOMERO) {
+          sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
+                StrokeColor.getAlpha(), StrokeColor.getRed());
+        }
+      }
+      if (polygon.getFillColor() != null){
+        ome.xml.model.primitives.Color FillColor = polygon.getFillColor();
+        fc = new Color(FillColor.getRed(), FillColor.getGreen(),
+              FillColor.getBlue(), FillColor.getAlpha());
+        if (isOMERO) {
+          fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
+                FillColor.getAlpha(), FillColor.getRed());
+        }
+      }
+      if (polygon.getStrokeWidth() != null){
+        sw = polygon.getStrokeWidth().value().floatValue();
+      }
+    }
+    else if (shapeObject instanceof ome.xml.model.Label){
+      //add support for TextROI's
+      ome.xml.model.Label label =
+      (ome.xml.model.Label) shapeObject;
+          double x = label.getX().doubleValue();
+          double y = label.getY().doubleValue();
+          String labelText = label.getText();
+
+          int size = label.getFontSize().value().intValue();
+          Font font = new Font(labelText, Font.PLAIN, size);
+          roi = new TextRoi((int) x,(int) y, labelText,font);
+
+          if (label.getStrokeColor() != null) {
+            ome.xml.model.primitives.Color StrokeColor = label.getStrokeColor();
+            sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
+                  StrokeColor.getBlue(), StrokeColor.getAlpha());
+            if (isOMERO) {
+              sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
+                    StrokeColor.getAlpha(), StrokeColor.getRed());
+            }
+          }
+          if (label.getFillColor() != null) {
+            ome.xml.model.primitives.Color FillColor = label.getFillColor();
+            fc = new Color(FillColor.getRed(), FillColor.getGreen(),
+                    FillColor.getBlue(), FillColor.getAlpha());
+            if (isOMERO) {
+              fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
+                    FillColor.getAlpha(), FillColor.getRed());
+            }
+          }
+          if (label.getStrokeWidth() != null) {
+            sw = label.getStrokeWidth().value().floatValue();
+          }
+
+    }
+    else if (shapeObject instanceof ome.xml.model.Rectangle) {
+      ome.xml.model.Rectangle rectangle =
+          (ome.xml.model.Rectangle) shapeObject;
+      int x = rectangle.getX().intValue();
+      int y = rectangle.getY().intValue();
+      int w = rectangle.getWidth().intValue();
+      int h = rectangle.getHeight().intValue();
+
+      roi = new Roi(x, y, w, h);
+
+      if (rectangle.getStrokeColor() != null){
+        ome.xml.model.primitives.Color StrokeColor = rectangle.getStrokeColor();
+        sc = new Color(StrokeColor.getRed(), StrokeColor.getGreen(),
+              StrokeColor.getBlue(), StrokeColor.getAlpha());
+        if (isOMERO) {
+          sc = new Color(StrokeColor.getGreen(), StrokeColor.getBlue(),
+                  StrokeColor.getAlpha(), StrokeColor.getRed());
+        }
+      }
+      if (rectangle.getFillColor() != null){
+        ome.xml.model.primitives.Color FillColor = rectangle.getFillColor();
+        fc = new Color(FillColor.getRed(), FillColor.getGreen(),
+              FillColor.getBlue(), FillColor.getAlpha());
+        if (isOMERO) {
+          fc = new Color(FillColor.getGreen(), FillColor.getBlue(),
+                FillColor.getAlpha(), FillColor.getRed());
+        }
+      }
+      if (rectangle.getStrokeWidth() != null){
+        sw = rectangle.getStrokeWidth().value().floatValue();
+      }
+    }
+
+    if (roi != null) {
+      String roiLabel = shapeObject.getText();
+      if (roiLabel == null) {
+        roiLabel = shapeObject.getID();
+      }
+      roi.setName(roiLabel);
+
+      if (sw == null) {
+        roi.setStrokeWidth((float) 1);
+      }
+      if (sw != null) {
+        if (sw == 0) {
+          sw = (float) 1;
+        }
+        roi.setStrokeWidth(sw);
+      }
+      if (sc != null) {
+        roi.setStrokeColor(sc);
+      }
+    }
+    return roi;
+  }
+
+  /** Sets the position of the ROI within the given image. */
+  private static void setPosition(Roi roi, ImportedRoi shape,
+    ImagePlus imp)
+  {
+    int c = shape.c;
+    int z = shape.z;
+    int t = shape.t;
+    // ImageJ expects 1-based indexing, opposed to
+    // 0-based indexing in OME
+    // Roi positions differ between hyperstacks and normal stacks
+    if (imp.getNChannels() > 1) {
+      c++;
+    }
+    if (imp.getNSlices() > 1) {
+      z++;
+    }
+    if (imp.getNFrames() > 1) {
+      t++;
+    }
+    if (c == 0) c = 1;
+    if (t == 0) t = 1;
+    if (z == 0) z = 1;
+    if (imp.getNChannels() == 1 && imp.getNSlices() == 1) {
+      roi.setPosition(t);
+    } else if (imp.getNChannels() == 1 && imp.getNFrames() == 1) {
+      roi.setPosition(z);
+    } else if (imp.getNSlices() == 1 && imp.getNFrames() == 1) {
+      roi.setPosition(c);
+    } else if (imp.isHyperStack()) {
+      roi.setPosition(c, z, t);
+    }
+  }
+
+  /**
+   * Finds the images to which each ROI applies. A ROI referenced by one
+   * or more series is added to the images of those series; ROIs which are
+   * not referenced by any image, or all ROIs if the series of the images
+   * are unknown, are added to every image.
+   */
+  private static List<List<ImagePlus>> getTargetImages(IMetadata retrieve,
+    ImagePlus[] images, OME root)
+  {
+    int roiCount = root.sizeOfROIList();
+    List<ImagePlus> all = Arrays.asList(images);
+
+    Map<Integer, List<ImagePlus>> seriesImages =
+      new HashMap<Integer, List<ImagePlus>>();
+    for (ImagePlus imp : images) {
+      Object series = imp.getProperty(ImagePlusReader.PROP_SERIES);
+      if (!(series instanceof Integer)) continue;
+      List<ImagePlus> list = seriesImages.get(series);
+      if (list == null) {
+        list = new ArrayList<ImagePlus>();
+        seriesImages.put((Integer) series, list);
+      }
+      list.add(imp);
+    }
+
+    List<List<ImagePlus>> targets = new ArrayList<List<ImagePlus>>();
+    if (seriesImages.isEmpty()) {
+      for (int i=0; i<roiCount; i++) targets.add(all);
+      return targets;
+    }
+
+    Map<String, Integer> roiIndices = new HashMap<String, Integer>();
+    for (int i=0; i<roiCount; i++) {
+      roiIndices.put(root.getROI(i).getID(), i);
+      targets.add(null);
+    }
+    boolean[] referenced = new boolean[roiCount];
+    for (int s=0; s<retrieve.getImageCount(); s++) {
+      List<ImagePlus> list = seriesImages.get(s);
+      for (int r=0; r<retrieve.getImageROIRefCount(s); r++) {
+        Integer roiNum = roiIndices.get(retrieve.getImageROIRef(s, r));
+        if (roiNum == null) continue;
+        referenced[roiNum] = true;
+        if (list == null) continue;
+        List<ImagePlus> target = targets.get(roiNum);
+        if (target == null) {
+          target = new ArrayList<ImagePlus>();
+          targets.set(roiNum, target);
+        }
+        target.addAll(list);
+      }
+    }
+    for (int i=0; i<roiCount; i++) {
+      if (!referenced[i]) targets.set(i, all);
+      else if (targets.get(i) == null) {
+        targets.set(i, new ArrayList<ImagePlus>());
+      }
+    }
+    return targets;
+  }
+
   // -- Helper methods --
   /**
    * Wraps the specified integer into a Non negative integer.
@@ -829,20 +980,13 @@ public class ROIHandler {
   private static void storePolygon(PolygonRoi roi, MetadataStore store,
       int roiNum, int shape, int c, int z, int t)
   {
-    int[] xCoordinates = roi.getPolygon().xpoints;
-    int[] yCoordinates = roi.getPolygon().ypoints;
+    java.awt.Polygon polygon = roi.getPolygon();
     String st1 = roi.getTypeAsString();
-    String points = "1";
-    for (int i = 0; i < xCoordinates.length; i++){
-      if (i == 0) {
-        points = (xCoordinates[i] + "," + yCoordinates[i]);
-      } else {
-        points= (points + " " + xCoordinates[i] + "," + yCoordinates[i]);
-      }
-    }
+    String points = encodePoints(polygon.xpoints, polygon.ypoints,
+      polygon.npoints);
 
-    if (st1.matches("Polyline") || st1.matches("Freeline") || st1.matches("Angle")) {
-      store.setPolylinePoints(points.toString(), roiNum, shape);
+    if (st1.equals("Polyline") || st1.equals("Freeline") || st1.equals("Angle")) {
+      store.setPolylinePoints(points, roiNum, shape);
       store.setPolylineText(roi.getName(), roiNum, shape);
       if (c >= 0) {
         store.setPolylineTheC(unwrap(c), roiNum, shape);
@@ -864,8 +1008,8 @@ public class ROIHandler {
         store.setPolylineFillColor(toOMExmlColor(roi.getFillColor()) , roiNum, shape);
       }
     }
-    else if (st1.matches("Polygon") || st1.matches("Freehand") || st1.matches("Traced")){
-      store.setPolygonPoints(points.toString(), roiNum, shape);
+    else if (st1.equals("Polygon") || st1.equals("Freehand") || st1.equals("Traced")){
+      store.setPolygonPoints(points, roiNum, shape);
       store.setPolygonText(roi.getName(), roiNum, shape);
       if (c >= 0) {
         store.setPolygonTheC(unwrap(c), roiNum, shape);
@@ -936,28 +1080,85 @@ public class ROIHandler {
     }
   }
 
+  /**
+   * Encodes (x, y) coordinates as a String suitable for
+   * MetadataStore.setPolygonPoints(...) or
+   * MetadataStore.setPolylinePoints(...)
+   */
+  static String encodePoints(int[] x, int[] y, int n) {
+    // presize for typical coordinates, to avoid repeated copying
+    StringBuilder sb = new StringBuilder(Math.max(16, n * 10));
+    for (int i=0; i<n; i++) {
+      if (i > 0) sb.append(' ');
+      sb.append(x[i]);
+      sb.append(',');
+      sb.append(y[i]);
+    }
+    return sb.toString();
+  }
+
   /**
    * Parse (x, y) coordinates from a String returned by
    * MetadataRetrieve.getPolygonpoints(...) or
    * MetadataRetrieve.getPolylinepoints(...)
    */
-  private static int[][] parsePoints(String points) {
+  static int[][] parsePoints(String points) {
     // assuming points are stored like this:
     // x0,y0 x1,y1 x2,y2 ...
-    String[] pointList = points.split(" ");
-    int[][] coordinates = new int[2][pointList.length];
+    int count = 0;
+    int len = points.length();
+    for (int i=0; i<len; i++) {
+      if (points.charAt(i) == ',') count++;
+    }
+    int[][] coordinates = new int[2][count];
 
-    for (int q=0; q<pointList.length; q++) {
-      pointList[q] = pointList[q].trim();
-      int delim = pointList[q].indexOf(',');
-      coordinates[0][q] =
-          (int) Double.parseDouble(pointList[q].substring(0, delim));
-      coordinates[1][q] =
-          (int) Double.parseDouble(pointList[q].substring(delim + 1));
+    int start = 0;
+    for (int q=0; q<count; q++) {
+      for (int axis=0; axis<2; axis++) {
+        while (start < len && isSeparator(points.charAt(start))) start++;
+        int end = start;
+        while (end < len && !isSeparator(points.charAt(end))) end++;
+        coordinates[axis][q] = parseCoordinate(points, start, end);
+        start = end;
+      }
     }
     return coordinates;
   }
 
+  private static boolean isSeparator(char c) {
+    return c == ',' || Character.isWhitespace(c);
+  }
+
+  /**
+   * Parses the coordinate between the given offsets, truncated to an
+   * integer. Plain integers and decimals are parsed directly; anything
+   * else (e.g. exponents) falls back to {@link Double#parseDouble}.
+   */
+  private static int parseCoordinate(String s, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      negative = s.charAt(i) == '-';
+      i++;
+    }
+    int value = 0;
+    int digits = 0;
+    while (i < end && digits < 9 && Character.isDigit(s.charAt(i))) {
+      value = value * 10 + (s.charAt(i) - '0');
+      i++;
+      digits++;
+    }
+    // truncating a decimal keeps the integer part
+    if (digits > 0 && i < end && s.charAt(i) == '.') {
+      i++;
+      while (i < end && Character.isDigit(s.charAt(i))) i++;
+    }
+    if (digits == 0 || i != end) {
+      return (int) Double.parseDouble(s.substring(start, end));
+    }
+    return negative ? -value : value;
+  }
+
   /**
    * Converts the Java Color into an OME-XML Color.
    *
@@ -970,4 +1171,19 @@ public class ROIHandler {
         color.getGreen(), color.getBlue(),color.getAlpha());
   }
 
+  // -- Helper classes --
+
+  /** An ImageJ ROI converted from a shape, with the shape's plane. */
+  private static class ImportedRoi {
+    private final Roi roi;
+    private final int c, z, t;
+
+    private ImportedRoi(Roi roi, Shape shape) {
+      this.roi = roi;
+      c = shape.getTheC() == null ? 0 : shape.getTheC().getValue();
+      z = shape.getTheZ() == null ? 0 : shape.getTheZ().getValue();
+      t = shape.getTheT() == null ? 0 : shape.getTheT().getValue();
+    }
+  }
+
 }
@@ -32,32 +32,59 @@ import ij.text.TextWindow;
 
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Menu;
 import java.awt.MenuBar;
 import java.awt.MenuItem;
 import java.awt.Scrollbar;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JDialog;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import com.jgoodies.forms.layout.CellConstraints;
 import com.jgoodies.forms.layout.FormLayout;
 
 /**
  * Text panel with search capabilities.
+ *
+ * A search index over the table's lines is built in the background when
+ * the window opens, and all searches run on a background thread, so that
+ * large tables can be searched without blocking the event dispatch thread.
  */
 public class SearchableWindow extends TextWindow {
 
   protected TextPanel panel;
   protected int index;
 
+  /** Full table contents, one row per line. */
+  private String data;
+
+  private SearchIndex searchIndex;
+
+  /** Single background thread on which the index is built and searched. */
+  private ExecutorService searcher;
+
+  private Future<?> pendingSearch;
+
+  /** Lines of the data shown in the panel when filtering, or null. */
+  private int[] shown;
+
   // -- Constructor --
 
   public SearchableWindow(String title, String headings, String data,
@@ -66,6 +93,23 @@ public class SearchableWindow extends TextWindow {
     super(title, headings, data, w, h);
     index = -1;
     panel = getTextPanel();
+    this.data = data;
+
+    searchIndex = new SearchIndex(data);
+    searcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "BioFormats-MetadataSearch");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    searcher.submit(new Runnable() {
+      @Override
+      public void run() {
+        searchIndex.build();
+      }
+    });
 
     MenuBar menubar = getMenuBar();
     Menu menu = menubar.getMenu(0);
@@ -85,6 +129,14 @@ public class SearchableWindow extends TextWindow {
     else panel.actionPerformed(e);
   }
 
+  // -- Window API methods --
+
+  @Override
+  public void dispose() {
+    searcher.shutdownNow();
+    super.dispose();
+  }
+
   // -- SearchableWindow API methods --
 
   public void selectLine(int index) {
@@ -112,26 +164,232 @@ public class SearchableWindow extends TextWindow {
     panel.adjustmentValueChanged(null);
   }
 
+  /**
+   * Selects the next (or previous) line containing the given text.
+   * The search runs in the background; the status of the given search
+   * box is updated when it completes.
+   *
+   * @param fromCurrent true if the current line may itself be selected,
+   *   e.g. while the search text is being typed
+   */
+  void find(final String text, final boolean ignoreCase,
+    final boolean forward, final boolean fromCurrent, final SearchBox box)
+  {
+    panel.resetSelection();
+    if (shown != null) {
+      // every line shown in the panel matches already
+      if (shown.length == 0) return;
+      if (!fromCurrent || index < 0) {
+        index = forward ? index + 1 : index - 1;
+      }
+      if (index >= shown.length) index = 0;
+      if (index < 0) index = shown.length - 1;
+      selectLine(index);
+      return;
+    }
+
+    final int start = fromCurrent ? (forward ? index - 1 : index + 1) : index;
+    submit(new Runnable() {
+      @Override
+      public void run() {
+        final int line = searchIndex.find(text, ignoreCase, start, forward);
+        final int count =
+          fromCurrent ? searchIndex.count(text, ignoreCase) : -1;
+        if (Thread.currentThread().isInterrupted()) return;
+        EventQueue.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (line >= 0 && line < panel.getLineCount()) {
+              index = line;
+              selectLine(line);
+            }
+            if (count >= 0) box.setStatus(count);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Shows only the lines containing the given text, or all lines if
+   * the text is empty. Matching lines are found in the background.
+   */
+  void filter(final String text, final boolean ignoreCase,
+    final SearchBox box)
+  {
+    submit(new Runnable() {
+      @Override
+      public void run() {
+        final int[] lines = text.length() == 0 ? null :
+          searchIndex.findAll(text, ignoreCase);
+        if (Thread.currentThread().isInterrupted()) return;
+        final ArrayList<String> rows = new ArrayList<String>();
+        if (lines != null) {
+          for (int line : lines) rows.add(searchIndex.getLine(line));
+        }
+        EventQueue.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            shown = lines;
+            index = -1;
+            panel.clear();
+            if (lines == null) panel.append(data);
+            else panel.append(rows);
+            if (lines != null) box.setStatus(lines.length);
+          }
+        });
+      }
+    });
+  }
+
+  // -- Helper methods --
+
+  /** Runs the given search in the background, cancelling any other one. */
+  private synchronized void submit(Runnable search) {
+    if (pendingSearch != null) pendingSearch.cancel(true);
+    pendingSearch = searcher.submit(search);
+  }
+
   // -- Helper class --
 
-  class SearchBox extends JDialog implements ActionListener, ChangeListener {
+  /**
+   * Index of the lines of a table. The full text is searched with
+   * {@link String#indexOf(String, int)} and each match is mapped to its
+   * line by binary search over the line offsets.
+   */
+  private static class SearchIndex {
+    private final String text;
+
+    /** Offset of each line within the text. */
+    private int[] lineStarts;
+
+    /** Lower case copy of the text, of identical length. */
+    private String lowerText;
+
+    private SearchIndex(String text) {
+      this.text = text;
+    }
+
+    /** Computes the line offsets and lower case text. */
+    private synchronized void build() {
+      if (lineStarts != null) return;
+      int count = 0;
+      int start = 0;
+      while (start < text.length()) {
+        int end = text.indexOf('\n', start);
+        count++;
+        start = end < 0 ? text.length() : end + 1;
+      }
+      int[] starts = new int[count];
+      start = 0;
+      for (int i=0; i<count; i++) {
+        starts[i] = start;
+        int end = text.indexOf('\n', start);
+        start = end < 0 ? text.length() : end + 1;
+      }
+      lowerText = lowerCase(text);
+      lineStarts = starts;
+    }
+
+    private String getLine(int line) {
+      build();
+      int end = line + 1 < lineStarts.length ?
+        lineStarts[line + 1] - 1 : text.length();
+      return text.substring(lineStarts[line], end);
+    }
+
+    /**
+     * Finds the first line after (or before) the given line containing
+     * the given text, wrapping around; returns -1 if no line matches.
+     */
+    private int find(String query, boolean ignoreCase, int line,
+      boolean forward)
+    {
+      build();
+      if (query.length() == 0 || lineStarts.length == 0) return -1;
+      String s = ignoreCase ? lowerText : text;
+      String q = ignoreCase ? lowerCase(query) : query;
+      int n = lineStarts.length;
+      int pos;
+      if (forward) {
+        int from = line + 1 >= 0 && line + 1 < n ? lineStarts[line + 1] : 0;
+        pos = s.indexOf(q, from);
+        if (pos < 0) pos = s.indexOf(q);
+      }
+      else {
+        int from = line > 0 && line < n ? lineStarts[line] - 1 : s.length();
+        pos = s.lastIndexOf(q, from);
+        if (pos < 0) pos = s.lastIndexOf(q);
+      }
+      return pos < 0 ? -1 : lineOf(pos);
+    }
+
+    /** Counts the lines containing the given text. */
+    private int count(String query, boolean ignoreCase) {
+      int[] lines = findAll(query, ignoreCase);
+      return lines == null ? 0 : lines.length;
+    }
+
+    /** Finds all lines containing the given text, in order. */
+    private int[] findAll(String query, boolean ignoreCase) {
+      build();
+      if (query.length() == 0) return new int[0];
+      String s = ignoreCase ? lowerText : text;
+      String q = ignoreCase ? lowerCase(query) : query;
+      int[] lines = new int[16];
+      int count = 0;
+      int pos = s.indexOf(q);
+      while (pos >= 0) {
+        if (Thread.currentThread().isInterrupted()) return null;
+        int line = lineOf(pos);
+        if (count == lines.length) lines = Arrays.copyOf(lines, count * 2);
+        lines[count++] = line;
+        if (line + 1 >= lineStarts.length) break;
+        pos = s.indexOf(q, lineStarts[line + 1]);
+      }
+      return Arrays.copyOf(lines, count);
+    }
+
+    private int lineOf(int offset) {
+      int i = Arrays.binarySearch(lineStarts, offset);
+      return i >= 0 ? i : -i - 2;
+    }
+
+    /** Converts to lower case one character at a time, keeping offsets. */
+    private static String lowerCase(String s) {
+      char[] c = s.toCharArray();
+      for (int i=0; i<c.length; i++) c[i] = Character.toLowerCase(c[i]);
+      return new String(c);
+    }
+  }
+
+  class SearchBox extends JDialog
+    implements ActionListener, ChangeListener, DocumentListener
+  {
     private JTextField searchBox;
     private JCheckBox ignore;
+    private JCheckBox filter;
+    private JLabel status;
     private boolean ignoreCase;
+    private boolean filtering;
     private SearchableWindow searchPane;
 
     public SearchBox(SearchableWindow searchPane) {
       setTitle("Search...");
       this.searchPane = searchPane;
       FormLayout layout = new FormLayout("pref,pref:grow,pref,pref:grow,pref",
-        "pref,pref:grow,pref,pref:grow,pref,pref:grow,pref");
+        "pref,pref:grow,pref,pref:grow,pref,pref:grow,pref,pref:grow,pref");
       JPanel panel = new JPanel(layout);
       CellConstraints cc = new CellConstraints();
 
       searchBox = new JTextField();
+      searchBox.getDocument().addDocumentListener(this);
 
       ignore = new JCheckBox("Ignore Case", false);
       ignore.addChangeListener(this);
+      filter = new JCheckBox("Matching Lines Only", false);
+      filter.addChangeListener(this);
+      status = new JLabel(" ");
       JButton next = new JButton("Find Next");
       next.setActionCommand("next");
       next.addActionListener(this);
@@ -146,53 +404,32 @@ public class SearchableWindow extends TextWindow {
       panel.add(ignore, cc.xy(2, 4));
       panel.add(next, cc.xy(4, 2));
       panel.add(previous, cc.xy(4, 4));
-      panel.add(cancel, cc.xywh(2, 6, 3, 1));
+      panel.add(filter, cc.xy(2, 6));
+      panel.add(status, cc.xy(4, 6));
+      panel.add(cancel, cc.xywh(2, 8, 3, 1));
 
-      panel.setSize(new Dimension(350, 200));
+      panel.setSize(new Dimension(350, 240));
       setContentPane(panel);
       setDefaultCloseOperation(DISPOSE_ON_CLOSE);
-      setSize(new Dimension(350, 200));
+      setSize(new Dimension(350, 240));
       setVisible(true);
     }
 
+    /** Reports the number of matching lines. */
+    public void setStatus(int matches) {
+      status.setText(matches == 1 ? "1 match" : matches + " matches");
+    }
+
     // -- ActionListener API methods --
 
     @Override
     public void actionPerformed(ActionEvent e) {
       String cmd = e.getActionCommand();
       if (cmd.equals("next")) {
-        searchPane.panel.resetSelection();
-        String text = searchBox.getText();
-        boolean found = false;
-        int original = searchPane.index;
-        while (!found) {
-          searchPane.index++;
-          if (searchPane.index >= searchPane.panel.getLineCount()) {
-            searchPane.index = 0;
-          }
-          if (searchPane.index == original) return;
-          String line = searchPane.panel.getLine(searchPane.index);
-          found = ignoreCase ? line.toLowerCase().indexOf(
-            text.toLowerCase()) >= 0 : line.indexOf(text) >= 0;
-        }
-        searchPane.selectLine(searchPane.index);
+        searchPane.find(searchBox.getText(), ignoreCase, true, false, this);
       }
       else if (cmd.equals("previous")) {
-        searchPane.panel.resetSelection();
-        String text = searchBox.getText();
-        boolean found = false;
-        int original = searchPane.index;
-        while (!found) {
-          searchPane.index--;
-          if (searchPane.index < 0) {
-            searchPane.index = searchPane.panel.getLineCount() - 1;
-          }
-          if (searchPane.index == original) return;
-          String line = searchPane.panel.getLine(searchPane.index);
-          found = ignoreCase ? line.toLowerCase().indexOf(
-            text.toLowerCase()) >= 0 : line.indexOf(text) >= 0;
-        }
-        searchPane.selectLine(searchPane.index);
+        searchPane.find(searchBox.getText(), ignoreCase, false, false, this);
       }
       else if (cmd.equals("cancel")) {
         dispose();
@@ -204,8 +441,44 @@ public class SearchableWindow extends TextWindow {
     @Override
     public void stateChanged(ChangeEvent e) {
       if (e.getSource().equals(ignore)) {
-        ignoreCase = ignore.isSelected();
+        if (ignoreCase != ignore.isSelected()) {
+          ignoreCase = ignore.isSelected();
+          update();
+        }
+      }
+      else if (e.getSource().equals(filter)) {
+        if (filtering != filter.isSelected()) {
+          filtering = filter.isSelected();
+          update();
+        }
+      }
+    }
+
+    // -- DocumentListener API methods --
+
+    @Override
+    public void insertUpdate(DocumentEvent e) { update(); }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) { update(); }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) { update(); }
+
+    // -- Helper methods --
+
+    /** Searches incrementally as the search text or options change. */
+    private void update() {
+      String text = searchBox.getText();
+      if (filtering) {
+        searchPane.filter(text, ignoreCase, this);
+      }
+      else if (searchPane.shown != null) {
+        searchPane.filter("", ignoreCase, this);
+        status.setText(" ");
       }
+      else if (text.length() == 0) status.setText(" ");
+      else searchPane.find(text, ignoreCase, true, true, this);
     }
 
   }
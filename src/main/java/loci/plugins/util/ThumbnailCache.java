@@ -0,0 +1,246 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.Prefs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.plugins.BF;
+
+/**
+ * Size-capped cache of thumbnail pixels, stored in the ImageJ preferences
+ * directory so that thumbnails survive between sessions.
+ *
+ * Thumbnails are keyed by file path, modification time, series, resolution,
+ * plane index and thumbnail size; a modified file therefore never matches
+ * an old entry. When the cache exceeds
+ * {@link LociPrefs#getThumbnailCacheSize()} megabytes, the least recently
+ * used entries are deleted.
+ */
+public final class ThumbnailCache {
+
+  // -- Constants --
+
+  private static final String CACHE_DIR = "bio-formats-thumbs";
+
+  private static final int MAGIC = 0x42465448; // "BFTH"
+
+  /** Fraction of the maximum size to which the cache is reduced. */
+  private static final double EVICT_TARGET = 0.9;
+
+  // -- Static fields --
+
+  /** Total size of the cache directory in bytes, or -1 if not yet known. */
+  private static long cacheSize = -1;
+
+  // -- Constructor --
+
+  private ThumbnailCache() { }
+
+  // -- Utility methods --
+
+  /**
+   * Obtains the thumbnail of the given plane of the reader's current series,
+   * from the cache if possible; otherwise the thumbnail is read using
+   * {@link ThumbnailTools#openThumbBytes(IFormatReader, int)} and added
+   * to the cache.
+   */
+  public static byte[] openThumbBytes(IFormatReader r, int no)
+    throws FormatException, IOException
+  {
+    String key = getKey(r, no);
+    if (key == null) return ThumbnailTools.openThumbBytes(r, no);
+
+    File file = getFile(key);
+    byte[] thumb = read(file, key, r);
+    if (thumb != null) return thumb;
+
+    thumb = ThumbnailTools.openThumbBytes(r, no);
+    write(file, key, r, thumb);
+    return thumb;
+  }
+
+  /** Deletes all cached thumbnails. */
+  public static synchronized void clear() {
+    File dir = getDirectory();
+    File[] files = dir == null ? null : dir.listFiles();
+    if (files == null) return;
+    for (File f : files) f.delete();
+    cacheSize = -1;
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Gets the key for the given plane, or null if the thumbnail
+   * should not be cached.
+   */
+  private static String getKey(IFormatReader r, int no) {
+    if (LociPrefs.getThumbnailCacheSize() <= 0) return null;
+    if (getDirectory() == null) return null;
+    String id = r.getCurrentFile();
+    if (id == null) return null;
+    File file = new File(id).getAbsoluteFile();
+    if (!file.isFile()) return null;
+    return file.getPath() + "|" + file.lastModified() + "|" + r.getSeries() +
+      "|" + r.getResolution() + "|" + no + "|" + r.getThumbSizeX() + "x" +
+      r.getThumbSizeY();
+  }
+
+  private static File getDirectory() {
+    String prefsDir = Prefs.getPrefsDir();
+    if (prefsDir == null) return null;
+    return new File(prefsDir, CACHE_DIR);
+  }
+
+  private static File getFile(String key) throws IOException {
+    // two independent hashes make collisions unlikely;
+    // the full key is also checked when reading
+    String name = Integer.toHexString(key.hashCode()) + "-" +
+      Integer.toHexString(Arrays.hashCode(key.getBytes("UTF-8"))) + ".thumb";
+    return new File(getDirectory(), name);
+  }
+
+  /** Reads a cached thumbnail, or returns null if there is no valid entry. */
+  private static byte[] read(File file, String key, IFormatReader r) {
+    if (!file.exists()) return null;
+    try (DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(file))))
+    {
+      if (in.readInt() != MAGIC || !key.equals(in.readUTF())) return null;
+      if (in.readInt() != r.getPixelType() ||
+        in.readInt() != r.getRGBChannelCount() ||
+        in.readBoolean() != r.isInterleaved() ||
+        in.readBoolean() != r.isLittleEndian())
+      {
+        return null;
+      }
+      byte[] thumb = new byte[in.readInt()];
+      in.readFully(thumb);
+      // mark as recently used
+      file.setLastModified(System.currentTimeMillis());
+      return thumb;
+    }
+    catch (IOException e) {
+      BF.debug("Could not read cached thumbnail: " + e.getMessage());
+      return null;
+    }
+  }
+
+  private static void write(File file, String key, IFormatReader r,
+    byte[] thumb)
+  {
+    File dir = file.getParentFile();
+    if (dir == null) return;
+    dir.mkdirs();
+    File tmp = new File(dir, file.getName() + "." +
+      Thread.currentThread().getId() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(new FileOutputStream(tmp))))
+    {
+      out.writeInt(MAGIC);
+      out.writeUTF(key);
+      out.writeInt(r.getPixelType());
+      out.writeInt(r.getRGBChannelCount());
+      out.writeBoolean(r.isInterleaved());
+      out.writeBoolean(r.isLittleEndian());
+      out.writeInt(thumb.length);
+      out.write(thumb);
+    }
+    catch (IOException e) {
+      BF.debug("Could not cache thumbnail: " + e.getMessage());
+      tmp.delete();
+      return;
+    }
+    synchronized (ThumbnailCache.class) {
+      if (cacheSize < 0) cacheSize = getSize(dir);
+      cacheSize -= file.length();
+      file.delete();
+      if (tmp.renameTo(file)) cacheSize += file.length();
+      else tmp.delete();
+      long max = LociPrefs.getThumbnailCacheSize() * 1024L * 1024L;
+      if (cacheSize > max) evict(dir, (long) (max * EVICT_TARGET));
+    }
+  }
+
+  /** Gets the total size of the files in the given directory. */
+  private static long getSize(File dir) {
+    File[] files = dir.listFiles();
+    if (files == null) return 0;
+    long total = 0;
+    for (File f : files) total += f.length();
+    return total;
+  }
+
+  /**
+   * Deletes the least recently used entries until the cache is no larger
+   * than the given size. The directory is only listed here, once the running
+   * total of its size exceeds the maximum, so that it is not listed on every
+   * write; reducing it below the maximum leaves room for further writes.
+   */
+  private static void evict(File dir, long max) {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    long total = 0;
+    for (File f : files) total += f.length();
+    cacheSize = total;
+    if (total <= max) return;
+
+    final long[] modified = new long[files.length];
+    Integer[] indices = new Integer[files.length];
+    for (int i=0; i<files.length; i++) {
+      modified[i] = files[i].lastModified();
+      indices[i] = i;
+    }
+    Arrays.sort(indices, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Long.compare(modified[a], modified[b]);
+      }
+    });
+    for (int i=0; i<indices.length && total > max; i++) {
+      File f = files[indices[i]];
+      long length = f.length();
+      if (f.delete()) total -= length;
+    }
+    cacheSize = total;
+  }
+
+}
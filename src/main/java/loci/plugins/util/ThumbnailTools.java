@@ -0,0 +1,251 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import java.io.IOException;
+import java.util.List;
+
+import loci.formats.CoreMetadata;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+
+/**
+ * Utility methods for reading thumbnails whose cost is bounded by the
+ * thumbnail size rather than the size of the full resolution plane.
+ *
+ * The smallest pyramid resolution which is at least as large as the
+ * thumbnail is used, if the dataset has multiple resolutions. If the
+ * chosen plane is still large, each thumbnail pixel is sampled from its
+ * position in the plane, reading a bounded number of tiles.
+ */
+public final class ThumbnailTools {
+
+  // -- Constants --
+
+  /** Planes up to this many bytes are read in full. */
+  private static final long MAX_PLANE_BYTES = 16 * 1024 * 1024;
+
+  /** Maximum number of tiles read for one thumbnail of a large plane. */
+  private static final int MAX_TILE_READS = 256;
+
+  /** Maximum width and height of each sampled tile. */
+  private static final int MAX_TILE_SIZE = 1024;
+
+  // -- Constructor --
+
+  private ThumbnailTools() { }
+
+  // -- Utility methods --
+
+  /**
+   * Reads a thumbnail of the given plane in the reader's current series.
+   * The result has the same size, pixel type and channel layout as
+   * {@link IFormatReader#openThumbBytes(int)} would return.
+   */
+  public static byte[] openThumbBytes(IFormatReader r, int no)
+    throws FormatException, IOException
+  {
+    int thumbX = r.getThumbSizeX();
+    int thumbY = r.getThumbSizeY();
+
+    boolean flattened = r.hasFlattenedResolutions();
+    int series = r.getSeries();
+    int resolution = r.getResolution();
+    try {
+      if (flattened) {
+        r.setSeries(findSeries(r, series, thumbX, thumbY));
+      }
+      else {
+        r.setResolution(findResolution(r, resolution, thumbX, thumbY));
+      }
+      return readScaled(r, no, thumbX, thumbY);
+    }
+    finally {
+      if (flattened) r.setSeries(series);
+      else r.setResolution(resolution);
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Finds the smallest flattened sub-resolution of the given series which
+   * is at least as large as the thumbnail.
+   */
+  private static int findSeries(IFormatReader r, int series,
+    int thumbX, int thumbY)
+  {
+    List<CoreMetadata> core = r.getCoreMetadataList();
+    // series must map directly to core indices (i.e., no series stitching)
+    if (core.size() != r.getSeriesCount()) return series;
+
+    int last = series;
+    for (int i=0; i<=series; i++) {
+      if (core.get(i).resolutionCount > 1 &&
+        i + core.get(i).resolutionCount > series)
+      {
+        last = i + core.get(i).resolutionCount - 1;
+        break;
+      }
+    }
+    int best = series;
+    for (int i=series+1; i<=last; i++) {
+      CoreMetadata m = core.get(i);
+      if (m.sizeX < thumbX || m.sizeY < thumbY) break;
+      best = i;
+    }
+    return best;
+  }
+
+  /**
+   * Finds the smallest resolution at or below the given one which is at
+   * least as large as the thumbnail.
+   */
+  private static int findResolution(IFormatReader r, int resolution,
+    int thumbX, int thumbY)
+  {
+    int best = resolution;
+    for (int i=resolution+1; i<r.getResolutionCount(); i++) {
+      r.setResolution(i);
+      if (r.getSizeX() < thumbX || r.getSizeY() < thumbY) break;
+      best = i;
+    }
+    return best;
+  }
+
+  /**
+   * Reads the given plane at the current resolution, scaled to the given
+   * thumbnail size using nearest neighbor sampling.
+   */
+  private static byte[] readScaled(IFormatReader r, int no,
+    int thumbX, int thumbY) throws FormatException, IOException
+  {
+    int w = r.getSizeX();
+    int h = r.getSizeY();
+    int c = r.getRGBChannelCount();
+    int bpp = FormatTools.getBytesPerPixel(r.getPixelType());
+    boolean interleaved = r.isInterleaved();
+    byte[] thumb = new byte[thumbX * thumbY * c * bpp];
+
+    if ((long) w * h * c * bpp <= MAX_PLANE_BYTES) {
+      byte[] plane = r.openBytes(no);
+      for (int ty=0; ty<thumbY; ty++) {
+        int sy = sample(ty, thumbY, h);
+        for (int tx=0; tx<thumbX; tx++) {
+          copyPixel(plane, w, h, sample(tx, thumbX, w), sy,
+            thumb, thumbX, thumbY, tx, ty, c, bpp, interleaved);
+        }
+      }
+      return thumb;
+    }
+
+    // sample the plane on a grid of points, reading each tile containing
+    // sample points once; if that would read too many tiles, the grid is
+    // made coarser than the thumbnail, so that thumbnail pixels are still
+    // taken from their true positions, but at a lower density
+    int tw = Math.min(Math.min(w, MAX_TILE_SIZE), r.getOptimalTileWidth());
+    int th = Math.min(Math.min(h, MAX_TILE_SIZE), r.getOptimalTileHeight());
+    if (tw <= 0) tw = Math.min(w, MAX_TILE_SIZE);
+    if (th <= 0) th = Math.min(h, MAX_TILE_SIZE);
+    int tilesX = (w + tw - 1) / tw;
+    int tilesY = (h + th - 1) / th;
+    int readsX = Math.min(thumbX, tilesX);
+    int readsY = Math.min(thumbY, tilesY);
+    int gridX = readsX, gridY = readsY;
+    while (gridX * gridY > MAX_TILE_READS) {
+      if (gridX >= gridY) gridX--;
+      else gridY--;
+    }
+    if (gridX == readsX) gridX = thumbX;
+    if (gridY == readsY) gridY = thumbY;
+
+    int[] xs = new int[gridX];
+    for (int i=0; i<gridX; i++) xs[i] = sample(i, gridX, w);
+    int[] ys = new int[gridY];
+    for (int i=0; i<gridY; i++) ys[i] = sample(i, gridY, h);
+
+    byte[] samples = new byte[gridX * gridY * c * bpp];
+    for (int y0=0; y0<gridY;) {
+      // sample rows y0 to y1 - 1 lie within the same row of tiles
+      int y1 = y0 + 1;
+      while (y1 < gridY && ys[y1] / th == ys[y0] / th) y1++;
+      for (int x0=0; x0<gridX;) {
+        int x1 = x0 + 1;
+        while (x1 < gridX && xs[x1] / tw == xs[x0] / tw) x1++;
+
+        // read the bounding box of the sample points within this tile
+        int rx = xs[x0], ry = ys[y0];
+        int rw = xs[x1 - 1] - rx + 1, rh = ys[y1 - 1] - ry + 1;
+        byte[] region = r.openBytes(no, rx, ry, rw, rh);
+        for (int gy=y0; gy<y1; gy++) {
+          for (int gx=x0; gx<x1; gx++) {
+            copyPixel(region, rw, rh, xs[gx] - rx, ys[gy] - ry,
+              samples, gridX, gridY, gx, gy, c, bpp, interleaved);
+          }
+        }
+        x0 = x1;
+      }
+      y0 = y1;
+    }
+
+    for (int ty=0; ty<thumbY; ty++) {
+      int gy = (int) ((long) ty * gridY / thumbY);
+      for (int tx=0; tx<thumbX; tx++) {
+        int gx = (int) ((long) tx * gridX / thumbX);
+        copyPixel(samples, gridX, gridY, gx, gy,
+          thumb, thumbX, thumbY, tx, ty, c, bpp, interleaved);
+      }
+    }
+    return thumb;
+  }
+
+  /** Maps index i of n evenly spaced samples to the center of its band. */
+  private static int sample(int i, int n, int size) {
+    return (int) Math.min(size - 1, ((2L * i + 1) * size) / (2L * n));
+  }
+
+  private static void copyPixel(byte[] src, int srcW, int srcH, int sx,
+    int sy, byte[] dest, int destW, int destH, int dx, int dy, int c,
+    int bpp, boolean interleaved)
+  {
+    for (int ch=0; ch<c; ch++) {
+      int s, d;
+      if (interleaved) {
+        s = ((sy * srcW + sx) * c + ch) * bpp;
+        d = ((dy * destW + dx) * c + ch) * bpp;
+      }
+      else {
+        s = ((ch * srcH + sy) * srcW + sx) * bpp;
+        d = ((ch * destH + dy) * destW + dx) * bpp;
+      }
+      System.arraycopy(src, s, dest, d, bpp);
+    }
+  }
+
+}
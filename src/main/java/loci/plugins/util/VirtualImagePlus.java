@@ -76,9 +76,14 @@ public class VirtualImagePlus extends ImagePlus {
   public synchronized void setSlice(int index) {
     super.setSlice(index);
 
-    BFVirtualStack stack = null;
-    if (getStack() instanceof BFVirtualStack) {
-      stack = (BFVirtualStack) getStack();
+    ImageStack imageStack = getStack();
+    if (imageStack instanceof ConcatenatedVirtualStack) {
+      // use the stack of the series containing the current plane
+      imageStack =
+        ((ConcatenatedVirtualStack) imageStack).getStack(getCurrentSlice());
+    }
+    if (imageStack instanceof BFVirtualStack) {
+      BFVirtualStack stack = (BFVirtualStack) imageStack;
       RecordedImageProcessor proc = stack.getRecordedProcessor();
       List<MethodEntry> methods = stack.getMethodStack();
       if (methods != null) {
@@ -97,7 +102,14 @@ public class VirtualImagePlus extends ImagePlus {
 
   @Override
   public void close() {
+    ImageStack stack = getStack();
     super.close();
+    if (stack instanceof BFVirtualStack) ((BFVirtualStack) stack).close();
+    else if (stack instanceof ConcatenatedVirtualStack) {
+      for (ImageStack s : ((ConcatenatedVirtualStack) stack).getStacks()) {
+        if (s instanceof BFVirtualStack) ((BFVirtualStack) s).close();
+      }
+    }
     try {
       r.close();
     }
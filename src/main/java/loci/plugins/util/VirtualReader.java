@@ -28,41 +28,197 @@
 package loci.plugins.util;
 
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import loci.formats.FormatException;
 import loci.formats.IFormatReader;
 import loci.formats.ReaderWrapper;
+import loci.plugins.BF;
 
 /**
- * TODO
+ * Reader shared by the virtual stacks of one import, which is closed once
+ * all of the image windows using it have been closed.
+ *
+ * While no planes are requested for {@link LociPrefs#getIdleReaderTimeout()}
+ * seconds, the underlying file handles are closed; the already parsed
+ * metadata is kept, and the files are reopened without parsing them again
+ * on the next plane request.
  *
  * @author Melissa Linkert melissa at glencoesoftware.com
  */
 public class VirtualReader extends ReaderWrapper {
 
+  // -- Static fields --
+
+  /** Timer closing the file handles of idle readers. */
+  private static ScheduledExecutorService idleTimer;
+
   // -- Fields --
 
-  private int refCount;
+  private final AtomicInteger refCount = new AtomicInteger();
+
+  /** Time of the most recent plane request, in milliseconds. */
+  private long lastAccess;
+
+  /** Whether the file handles are currently closed because of inactivity. */
+  private boolean idle;
+
+  private ScheduledFuture<?> idleCheck;
 
   // -- Constructor --
 
   public VirtualReader(IFormatReader r) {
     super(r);
-    refCount = 0;
   }
 
   // -- VirtualReader API methods --
 
   public void setRefCount(int refCount) {
-    this.refCount = refCount;
+    this.refCount.set(refCount);
+  }
+
+  public int getRefCount() {
+    return refCount.get();
+  }
+
+  /** Returns true if the file handles are closed because of inactivity. */
+  public synchronized boolean isIdle() {
+    return idle;
   }
 
   // -- IFormatReader API methods --
 
+  @Override
+  public synchronized byte[] openBytes(int no)
+    throws FormatException, IOException
+  {
+    access();
+    return super.openBytes(no);
+  }
+
+  @Override
+  public synchronized byte[] openBytes(int no, byte[] buf)
+    throws FormatException, IOException
+  {
+    access();
+    return super.openBytes(no, buf);
+  }
+
+  @Override
+  public synchronized byte[] openBytes(int no, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    access();
+    return super.openBytes(no, x, y, w, h);
+  }
+
+  @Override
+  public synchronized byte[] openBytes(int no, byte[] buf,
+    int x, int y, int w, int h) throws FormatException, IOException
+  {
+    access();
+    return super.openBytes(no, buf, x, y, w, h);
+  }
+
+  @Override
+  public synchronized Object openPlane(int no, int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    access();
+    return super.openPlane(no, x, y, w, h);
+  }
+
+  @Override
+  public synchronized byte[] openThumbBytes(int no)
+    throws FormatException, IOException
+  {
+    access();
+    return super.openThumbBytes(no);
+  }
+
   @Override
   public void close() throws IOException {
-    if (refCount > 0) refCount--;
-    if (refCount == 0) super.close();
+    int count;
+    do {
+      count = refCount.get();
+    } while (count > 0 && !refCount.compareAndSet(count, count - 1));
+    if (count <= 1) {
+      synchronized (this) {
+        if (idleCheck != null) idleCheck.cancel(false);
+        idleCheck = null;
+        idle = false;
+        super.close();
+      }
+    }
   }
 
-}
+  // -- Helper methods --
+
+  /** Reopens the files if necessary, and restarts the idle timer. */
+  private void access() throws IOException {
+    if (idle) {
+      BF.debug("Reopening idle reader for " + getCurrentFile());
+      reopenFile();
+      idle = false;
+    }
+    lastAccess = System.currentTimeMillis();
+    if (idleCheck == null) scheduleIdleCheck(getTimeout());
+  }
+
+  private void scheduleIdleCheck(long delay) {
+    if (delay <= 0) return;
+    idleCheck = getIdleTimer().schedule(new Runnable() {
+      @Override
+      public void run() {
+        checkIdle();
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /** Closes the file handles if no planes were requested recently. */
+  private synchronized void checkIdle() {
+    idleCheck = null;
+    if (getCurrentFile() == null) return;
+    long timeout = getTimeout();
+    if (timeout <= 0) return;
+    long remaining = lastAccess + timeout - System.currentTimeMillis();
+    if (remaining > 0) {
+      scheduleIdleCheck(remaining);
+      return;
+    }
+    try {
+      close(true);
+      idle = true;
+      BF.debug("Closed idle reader for " + getCurrentFile());
+    }
+    catch (IOException e) {
+      BF.debug("Could not close idle reader: " + e.getMessage());
+    }
+  }
 
+  /** Gets the idle period in milliseconds, or 0 if disabled. */
+  private static long getTimeout() {
+    return LociPrefs.getIdleReaderTimeout() * 1000L;
+  }
+
+  private static synchronized ScheduledExecutorService getIdleTimer() {
+    if (idleTimer == null) {
+      idleTimer = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "BioFormats-IdleReaders");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    }
+    return idleTimer;
+  }
+
+}
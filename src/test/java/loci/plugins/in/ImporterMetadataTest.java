@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.in;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import loci.formats.FormatException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the formatted original metadata follows every modification of
+ * the {@link ImporterMetadata} map.
+ */
+public class ImporterMetadataTest {
+
+  // -- Constants --
+
+  private static final String ID =
+    "test&pixelType=uint8&sizeX=64&sizeY=32&sizeZ=2.fake";
+
+  private static final String KEY = "Test key";
+
+  // -- Fields --
+
+  private ImporterMetadata metadata;
+
+  // -- Setup methods --
+
+  @BeforeMethod
+  public void setUp() throws FormatException, IOException {
+    ImporterOptions options = new ImporterOptions();
+    options.setId(ID);
+    options.setQuiet(true);
+    ImportProcess process = new ImportProcess(options);
+    assertTrue(process.execute());
+    metadata = process.getOriginalMetadata();
+    metadata.put(KEY, "old");
+    assertHasValue("old");
+  }
+
+  // -- ImporterMetadataTest methods --
+
+  @Test
+  public void testPopulated() {
+    assertTrue(metadata.containsKey(" SizeX"));
+    assertTrue(metadata.toString().contains(" SizeX = 64\n"));
+    assertTrue(metadata.getMetadataString("\t").contains(" SizeZ\t2\n"));
+  }
+
+  @Test
+  public void testPut() {
+    metadata.put(KEY, "new");
+    assertHasValue("new");
+    metadata.remove(KEY);
+    assertRemoved();
+  }
+
+  @Test
+  public void testReplace() {
+    metadata.replace(KEY, "new");
+    assertHasValue("new");
+    metadata.replace(KEY, "new", "newer");
+    assertHasValue("newer");
+  }
+
+  @Test
+  public void testPutIfAbsent() {
+    metadata.remove(KEY);
+    metadata.putIfAbsent(KEY, "new");
+    assertHasValue("new");
+  }
+
+  @Test
+  public void testCompute() {
+    metadata.compute(KEY, new BiFunction<String, Object, Object>() {
+      @Override
+      public Object apply(String key, Object value) { return value + "1"; }
+    });
+    assertHasValue("old1");
+    metadata.computeIfPresent(KEY, new BiFunction<String, Object, Object>() {
+      @Override
+      public Object apply(String key, Object value) { return value + "2"; }
+    });
+    assertHasValue("old12");
+    metadata.remove(KEY);
+    metadata.computeIfAbsent(KEY, new Function<String, Object>() {
+      @Override
+      public Object apply(String key) { return "new"; }
+    });
+    assertHasValue("new");
+  }
+
+  @Test
+  public void testMerge() {
+    metadata.merge(KEY, "new", new BiFunction<Object, Object, Object>() {
+      @Override
+      public Object apply(Object a, Object b) { return a + "+" + b; }
+    });
+    assertHasValue("old+new");
+  }
+
+  @Test
+  public void testReplaceAll() {
+    metadata.replaceAll(new BiFunction<String, Object, Object>() {
+      @Override
+      public Object apply(String key, Object value) {
+        return KEY.equals(key) ? "new" : value;
+      }
+    });
+    assertHasValue("new");
+  }
+
+  @Test
+  public void testEntrySetValue() {
+    for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+      if (KEY.equals(entry.getKey())) entry.setValue("new");
+    }
+    assertHasValue("new");
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    Iterator<String> keys = metadata.keySet().iterator();
+    while (keys.hasNext()) {
+      if (KEY.equals(keys.next())) keys.remove();
+    }
+    assertRemoved();
+  }
+
+  @Test
+  public void testViewRemove() {
+    assertTrue(metadata.values().remove("old"));
+    assertRemoved();
+    metadata.put(KEY, "old");
+    assertTrue(metadata.keySet().remove(KEY));
+    assertRemoved();
+  }
+
+  // -- Helper methods --
+
+  private void assertHasValue(String value) {
+    assertEquals(metadata.get(KEY), value);
+    assertTrue(metadata.toString().contains(KEY + " = " + value + "\n"));
+    assertTrue(metadata.getMetadataString("\t").contains(
+      KEY + "\t" + value + "\n"));
+  }
+
+  private void assertRemoved() {
+    assertFalse(metadata.containsKey(KEY));
+    assertFalse(metadata.toString().contains(KEY));
+  }
+
+}
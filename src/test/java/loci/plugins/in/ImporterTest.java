@@ -41,7 +41,11 @@ import loci.common.Location;
 import loci.common.Region;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
 import loci.plugins.BF;
+import loci.plugins.util.ConcatenatedVirtualStack;
+import loci.plugins.util.PlaneCache;
+import loci.plugins.util.PlaneTransform;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -1049,6 +1053,61 @@ public class ImporterTest {
     groupedFilesTest(imps[0], FAKE_PLANE_COUNT, FAKE_CHANNEL_COUNT, FAKE_TIMEPOINT_COUNT);
   }
 
+  /**
+   * tests that a file pattern large enough for its files to be initialized in
+   * parallel imports the same planes as a sequential import
+   */
+  private void datasetGroupManyFilesTester()
+  {
+    final int z = 2, c = 4, t = 5;
+    String template = constructFakeFilename("many_C%s_TP%s", FormatTools.UINT8, FAKE_SIZE_X, FAKE_SIZE_Y, z, 1, 1,
+                        -1, false, -1, false, -1);
+    for (int tIndex = 1; tIndex <= t; tIndex++) {
+      for (int cIndex = 1; cIndex <= c; cIndex++) {
+        Location.mapId(String.format(template, cIndex, tIndex), "iThinkI'mImportantButI'mNot");
+      }
+    }
+    String path = String.format(template, 1, 1);
+
+    ImagePlus[] parallel = null, sequential = null;
+
+    try {
+      ImporterOptions options = new ImporterOptions();
+      options.setAutoscale(false);
+      options.setGroupFiles(true);
+      options.setId(path);
+      parallel = BF.openImagePlus(options);
+
+      // files of a pattern with a range specified are initialized one at a time
+      options = new ImporterOptions();
+      options.setAutoscale(false);
+      options.setGroupFiles(true);
+      options.setSpecifyRanges(true);
+      options.setId(path);
+      sequential = BF.openImagePlus(options);
+    }
+    catch (IOException e) {
+      fail(e.getMessage());
+    }
+    catch (FormatException e) {
+      fail(e.getMessage());
+    }
+
+    impsCountTest(parallel,1);
+    impsCountTest(sequential,1);
+
+    xyzctTest(parallel[0], FAKE_SIZE_X, FAKE_SIZE_Y, z, c, t);
+
+    groupedFilesTest(parallel[0], z, c, t);
+
+    ImageStack expected = sequential[0].getStack();
+    ImageStack actual = parallel[0].getStack();
+    assertEquals(actual.getSize(), expected.getSize());
+    for (int i = 1; i <= expected.getSize(); i++) {
+      assertEquals((byte[]) actual.getPixels(i), (byte[]) expected.getPixels(i));
+    }
+  }
+
   /** tests BF's options.setUngroupFiles() */
   private void datasetOpenFilesIndividuallyTester(boolean virtual)
   {
@@ -1222,6 +1281,136 @@ public class ImporterTest {
     multipleSeriesInCztOrderTest(imp,s,z,c,t);
   }
 
+  /** tests BF's options.setConcatenate() with options.setVirtual() */
+  private void datasetConcatenateVirtualTester(int pixType, int x, int y, int z, int c, int t, int s)
+  {
+    assertTrue(s >= 2);  // necessary for this test
+
+    String path = constructFakeFilename("concatVirtual", pixType, x, y, z, c, t, s, false, -1, false, -1);
+
+    ImagePlus[] series = null, imps = null;
+    long seriesBytes = 0, concatBytes = 0;
+
+    try {
+      // the series as separate images, for reference
+      PlaneCache.clear();
+      ImporterOptions options = new ImporterOptions();
+      options.setAutoscale(false);
+      options.setVirtual(true);
+      options.setId(path);
+      options.setOpenAllSeries(true);
+      series = BF.openImagePlus(options);
+      seriesBytes = PlaneCache.getSize();
+
+      PlaneCache.clear();
+      options = new ImporterOptions();
+      options.setAutoscale(false);
+      options.setVirtual(true);
+      options.setId(path);
+      options.setOpenAllSeries(true);
+      options.setConcatenate(true);
+      imps = BF.openImagePlus(options);
+      concatBytes = PlaneCache.getSize();
+    }
+    catch (IOException e) {
+      fail(e.getMessage());
+    }
+    catch (FormatException e) {
+      fail(e.getMessage());
+    }
+
+    impsCountTest(series,s);
+    impsCountTest(imps,1);
+
+    // concatenating reads no more planes than opening the series separately
+    assertEquals(concatBytes, seriesBytes);
+
+    ImagePlus imp = imps[0];
+    xyzctTest(imp,x,y,z,c,t*s);
+
+    ImageStack st = imp.getStack();
+    assertTrue(st instanceof ConcatenatedVirtualStack);
+    ConcatenatedVirtualStack concat = (ConcatenatedVirtualStack) st;
+    assertEquals(concat.getStacks().size(), s);
+
+    // planes of the last series are only read when requested
+    int planes = z*c*t;
+    concat.getProcessor(s*planes);
+    assertTrue(PlaneCache.getSize() > concatBytes);
+
+    for (int n = 1; n <= s*planes; n++) {
+      int local = (n - 1) % planes + 1;
+      ImageStack expected = series[(n - 1) / planes].getStack();
+      assertEquals(concat.getLocalIndex(n), local);
+      assertTrue(concat.getStack(n) == concat.getStacks().get((n - 1) / planes));
+      assertEquals(st.getSliceLabel(n), expected.getSliceLabel(local));
+      assertEquals((byte[]) st.getProcessor(n).getPixels(), (byte[]) expected.getProcessor(local).getPixels());
+    }
+
+    multipleSeriesInCztOrderTest(imp,s,z,c,t);
+  }
+
+  /** tests BF's options.addPlaneTransform() */
+  private void planeTransformTester(boolean virtual, boolean toFloat)
+  {
+    final int x = 82, y = 47, z = 2, c = 1, t = 3;
+
+    String path = constructFakeFilename("transform", FormatTools.UINT8, x, y, z, c, t, -1, false, -1, false, -1);
+
+    // either double each pixel in place, or add the plane index to a
+    // floating point copy
+    PlaneTransform transform = toFloat ?
+      new PlaneTransform() {
+        @Override
+        public ImageProcessor transform(ImageProcessor ip, IFormatReader reader, int no) {
+          ImageProcessor result = ip.convertToFloat();
+          result.add(no);
+          return result;
+        }
+      } :
+      new PlaneTransform() {
+        @Override
+        public ImageProcessor transform(ImageProcessor ip, IFormatReader reader, int no) {
+          ip.multiply(2);
+          return ip;
+        }
+      };
+
+    ImagePlus[] imps = null;
+
+    try {
+      ImporterOptions options = new ImporterOptions();
+      options.setAutoscale(false);
+      options.setVirtual(virtual);
+      options.setId(path);
+      options.addPlaneTransform(transform);
+      imps = BF.openImagePlus(options);
+    }
+    catch (IOException e) {
+      fail(e.getMessage());
+    }
+    catch (FormatException e) {
+      fail(e.getMessage());
+    }
+
+    impsCountTest(imps,1);
+
+    ImagePlus imp = imps[0];
+    xyzctTest(imp,x,y,z,c,t);
+    assertEquals(imp.getBitDepth(), toFloat ? 32 : 8);
+
+    // outside of the first row, each pixel's value is its x coordinate
+    ImageStack st = imp.getStack();
+    for (int n = 1; n <= st.getSize(); n++) {
+      ImageProcessor proc = st.getProcessor(n);
+      assertEquals(proc.getBitDepth(), toFloat ? 32 : 8);
+      for (int px = 0; px < x; px += 9) {
+        float expected = toFloat ? px + n - 1 : 2 * px;
+        assertEquals(proc.getPixelValue(px, y - 1), expected, 0);
+      }
+    }
+  }
+
 
   private void ascendingValuesTest(byte[] data, int expectedLength)
   {
@@ -1740,6 +1929,120 @@ public class ImporterTest {
     croppedPixelsTest(imp,ox,cropSize);
   }
 
+  /** tests BF's options.setBinning() */
+  private void memoryBinningTester(int x, int y, int binning)
+  {
+    String path = constructFakeFilename("binning", FormatTools.UINT8, x, y, 2, 1, 1, -1, false, -1, false, -1);
+    path = path.replace(".fake", "&physicalSizeX=0.5&physicalSizeY=0.25.fake");
+
+    // open image
+    ImagePlus[] imps = null;
+
+    try {
+      ImporterOptions options = new ImporterOptions();
+      options.setAutoscale(false);
+      options.setId(path);
+      options.setBinning(binning);
+      imps = BF.openImagePlus(options);
+    }
+    catch (IOException e) {
+      fail(e.getMessage());
+    }
+    catch (FormatException e) {
+      fail(e.getMessage());
+    }
+
+    // test results
+    impsCountTest(imps,1);
+
+    ImagePlus imp = imps[0];
+
+    xyzctTest(imp,x/binning,y/binning,2,1,1);
+
+    // each pixel is the average of a binning x binning block; FakeFile
+    // pixels equal their x coordinate, except for the index pixels of row 0
+    for (int z = 0; z < 2; z++) {
+      ImageProcessor proc = imp.getStack().getProcessor(z+1);
+      for (int ix = 0; ix < imp.getWidth(); ix++)
+        for (int iy = 1; iy < imp.getHeight(); iy++)
+          assertEquals(ix*binning + (binning-1)/2.0,proc.getPixelValue(ix, iy),0.5);
+    }
+
+    // the pixel sizes cover the binned blocks
+    assertEquals(0.5*binning,imp.getCalibration().pixelWidth,0.000001);
+    assertEquals(0.25*binning,imp.getCalibration().pixelHeight,0.000001);
+  }
+
+  /** tests BF's options.setProjection() and options.setProjectionAxis() */
+  private void projectionTester(String method, boolean axisT, String stackOrder, int z, int c, int t)
+  {
+    String path = constructFakeFilename("projection", FormatTools.UINT8, 64, 32, z, c, t, -1, false, -1, false, -1);
+
+    // open image
+    ImagePlus[] imps = null;
+
+    try {
+      ImporterOptions options = new ImporterOptions();
+      options.setAutoscale(false);
+      options.setId(path);
+      options.setProjection(method);
+      options.setProjectionAxis(axisT ? ImporterOptions.PROJECTION_AXIS_T : ImporterOptions.PROJECTION_AXIS_Z);
+      options.setStackOrder(stackOrder);
+      imps = BF.openImagePlus(options);
+    }
+    catch (IOException e) {
+      fail(e.getMessage());
+    }
+    catch (FormatException e) {
+      fail(e.getMessage());
+    }
+
+    // test results
+    impsCountTest(imps,1);
+
+    ImagePlus imp = imps[0];
+
+    int projected = axisT ? t : z;
+    int sizeZ = axisT ? z : 1;
+    int sizeT = axisT ? 1 : t;
+    xyzctTest(imp,64,32,sizeZ,c,sizeT);
+
+    // the projected index pixel folds the indexes 0..projected-1; the other
+    // index pixels and the gradient are summed by sum projections only
+    double folded, scale;
+    if (ImporterOptions.PROJECTION_MAX.equals(method)) {
+      folded = projected - 1;
+      scale = 1;
+    }
+    else if (ImporterOptions.PROJECTION_MIN.equals(method)) {
+      folded = 0;
+      scale = 1;
+    }
+    else if (ImporterOptions.PROJECTION_SUM.equals(method)) {
+      folded = projected * (projected - 1) / 2;
+      scale = projected;
+    }
+    else {
+      folded = (projected - 1) / 2.0;
+      scale = 1;
+    }
+
+    // the projected planes keep the stack order of the remaining axes
+    boolean czt = ImporterOptions.ORDER_XYCZT.equals(stackOrder);
+    for (int it = 0; it < sizeT; it++)
+      for (int ic = 0; ic < c; ic++)
+        for (int iz = 0; iz < sizeZ; iz++) {
+          int index = czt ? ic + iz*c : iz + ic*sizeZ;
+          index += it*sizeZ*c;
+          ImageProcessor proc = imp.getStack().getProcessor(index+1);
+          assertEquals(axisT ? iz*scale : folded,proc.getPixelValue(20, 0),0.000001);
+          assertEquals(ic*scale,proc.getPixelValue(30, 0),0.000001);
+          assertEquals(axisT ? folded : it*scale,proc.getPixelValue(40, 0),0.000001);
+          for (int ix = 0; ix < imp.getWidth(); ix++)
+            assertEquals(ix*scale,proc.getPixelValue(ix, 10),0.000001);
+        }
+  }
+
   /** tests BF's options.setSplitChannels() */
   private void splitChannelsTester()
   {
@@ -2019,6 +2322,12 @@ public class ImporterTest {
       datasetGroupFilesTester(virtual);
   }
 
+  @Test
+  public void testDatasetGroupManyFiles()
+  {
+    datasetGroupManyFilesTester();
+  }
+
   @Test
   public void testDatasetOpenFilesIndividually()
   {
@@ -2070,6 +2379,21 @@ public class ImporterTest {
     datasetConcatenateTester(FormatTools.UINT8, 82, 47, 4, 5, 2, 9);
   }
 
+  @Test
+  public void testDatasetConcatenateVirtual()
+  {
+    datasetConcatenateVirtualTester(FormatTools.UINT8, 82, 47, 4, 3, 2, 5);
+  }
+
+  @Test
+  public void testPlaneTransforms()
+  {
+    for (boolean virtual : BOOLEAN_STATES) {
+      planeTransformTester(virtual, false);
+      planeTransformTester(virtual, true);
+    }
+  }
+
   @Test
   public void testColorDefault() {
     for (int pixType : MINIMAL_PIXEL_TYPES) {
@@ -2386,6 +2710,30 @@ public class ImporterTest {
     memoryCropTester(100, 122, 0, 15, 3);
   }
 
+  @Test
+  public void testMemoryBinning()
+  {
+    // note - binning is not applied to virtual stacks
+    memoryBinningTester(120, 90, 3);
+    memoryBinningTester(101, 76, 2);
+    memoryBinningTester(64, 64, 1);
+  }
+
+  @Test
+  public void testProjection()
+  {
+    // note - projection is not applied to virtual stacks
+    String[] methods = new String[] {ImporterOptions.PROJECTION_MAX, ImporterOptions.PROJECTION_MIN,
+      ImporterOptions.PROJECTION_SUM, ImporterOptions.PROJECTION_AVERAGE};
+    for (String method : methods) {
+      for (boolean axisT : BOOLEAN_STATES) {
+        projectionTester(method, axisT, ImporterOptions.ORDER_XYCZT, 3, 1, 4);
+        projectionTester(method, axisT, ImporterOptions.ORDER_XYCZT, 3, 2, 4);
+        projectionTester(method, axisT, ImporterOptions.ORDER_XYZCT, 3, 2, 4);
+      }
+    }
+  }
+
   @Test
   public void testSplitChannels()
   {
@@ -75,6 +75,14 @@ public class MacroTest {
   private static final String COMPOSITE_MODE = "color_mode=Composite ";
   private static final String COLORIZED_MODE = "color_mode=Colorized ";
 
+  private static final String AUTO_MEMORY_POLICY = "memory_policy=Auto ";
+  private static final String BAD_MEMORY_POLICY = "memory_policy=Never ";
+
+  private static final String BINNING = "xy_binning=4 ";
+
+  private static final String PROJECTION =
+    "projection=[Max Intensity] projection_axis=T ";
+
   // -- MacroTest methods --
 
   @Test
@@ -116,6 +124,30 @@ public class MacroTest {
     assertEquals(compositeB.getColorMode(), "Composite");
   }
 
+  @Test
+  public void testMemoryPolicy() {
+    ImporterOptions auto = getOptions(AUTO_MEMORY_POLICY);
+    assertTrue(auto.isMemoryPolicyAuto());
+    ImporterOptions bad = getOptions(BAD_MEMORY_POLICY);
+    assertEquals(bad.getMemoryPolicy(), ImporterOptions.MEMORY_POLICY_WARN);
+  }
+
+  @Test
+  public void testBinning() {
+    assertEquals(getOptions(BINNING).getBinning(), 4);
+    assertEquals(getOptions(COMPOSITE_MODE).getBinning(), 1);
+  }
+
+  @Test
+  public void testProjection() {
+    ImporterOptions projected = getOptions(PROJECTION);
+    assertEquals(projected.getProjection(), ImporterOptions.PROJECTION_MAX);
+    assertTrue(projected.isProjectionAxisT());
+    ImporterOptions plain = getOptions(COMPOSITE_MODE);
+    assertFalse(plain.isProjection());
+    assertFalse(plain.isProjectionAxisT());
+  }
+
   // -- Helper methods --
 
   private ImporterOptions getOptions(String macro) {
@@ -129,6 +161,7 @@ public class MacroTest {
       ImporterOptions options = new ImporterOptions();
       options.parseArg(macro);
       options.checkObsoleteOptions();
+      options.checkMacroOptions();
       return options;
     }
     catch (IOException e) {
@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.plugins.out;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the conversion of a directory of fake files by
+ * {@link BatchConverter}.
+ */
+public class BatchConverterTest {
+
+  // -- Constants --
+
+  private static final String SINGLE = "single&sizeX=64&sizeY=32";
+  private static final String MULTI = "multi&sizeX=64&sizeY=32&series=2";
+  private static final String PLANE = "plane_%s&sizeX=64&sizeY=32";
+
+  // -- Fields --
+
+  private File inputDir, outputDir;
+
+  // -- BatchConverterTest methods --
+
+  @BeforeMethod
+  public void createDirectories() throws IOException {
+    inputDir = Files.createTempDirectory("convert-in").toFile();
+    outputDir = Files.createTempDirectory("convert-out").toFile();
+    createFile(SINGLE + ".fake");
+    createFile(MULTI + ".fake");
+    createFile(String.format(PLANE, 1) + ".fake");
+    createFile(String.format(PLANE, 2) + ".fake");
+    // a dataset made of the plane files
+    try (PrintWriter out =
+      new PrintWriter(new FileWriter(createFile("a.pattern"))))
+    {
+      out.println(new File(inputDir, String.format(PLANE, "<1-2>") +
+        ".fake").getAbsolutePath());
+    }
+  }
+
+  @AfterMethod
+  public void deleteDirectories() {
+    delete(inputDir);
+    delete(outputDir);
+  }
+
+  @Test
+  public void testDatasets() throws InterruptedException {
+    assertEquals(convert(false), 0);
+
+    assertTrue(output(SINGLE).exists());
+    // multi-series files are written one file per series
+    assertFalse(output(MULTI).exists());
+    assertTrue(output(MULTI + "_S0").exists());
+    assertTrue(output(MULTI + "_S1").exists());
+    assertFalse(output(MULTI + "_S2").exists());
+    // files used by a dataset are not converted on their own
+    assertTrue(output("a").exists());
+    assertFalse(output(String.format(PLANE, 1)).exists());
+    assertFalse(output(String.format(PLANE, 2)).exists());
+  }
+
+  @Test
+  public void testSkipUpToDate() throws InterruptedException {
+    assertEquals(convert(false), 0);
+    long inputModified = new File(inputDir, SINGLE + ".fake").lastModified();
+    long marker = inputModified + 60000;
+    File single = output(SINGLE);
+    File multi = output(MULTI + "_S0");
+    File dataset = output("a");
+    for (File f : new File[] {single, multi, dataset}) {
+      assertTrue(f.setLastModified(marker));
+    }
+
+    // outputs newer than their inputs are skipped
+    assertEquals(convert(false), 0);
+    assertEquals(single.lastModified(), marker);
+    assertEquals(multi.lastModified(), marker);
+    assertEquals(dataset.lastModified(), marker);
+
+    // a modified file of a dataset makes its output out of date
+    File plane = new File(inputDir, String.format(PLANE, 2) + ".fake");
+    assertTrue(plane.setLastModified(marker + 60000));
+    assertEquals(convert(false), 0);
+    assertEquals(single.lastModified(), marker);
+    assertTrue(dataset.lastModified() != marker);
+
+    // unless overwriting
+    assertEquals(convert(true), 0);
+    assertTrue(single.lastModified() != marker);
+    assertTrue(multi.lastModified() != marker);
+  }
+
+  // -- Helper methods --
+
+  private int convert(boolean overwrite) throws InterruptedException {
+    BatchConverter converter = new BatchConverter(inputDir, outputDir);
+    converter.setThreads(2);
+    converter.setOverwrite(overwrite);
+    return converter.run();
+  }
+
+  private File output(String base) {
+    return new File(outputDir, base + ".ome.tif");
+  }
+
+  private File createFile(String name) throws IOException {
+    File file = new File(inputDir, name);
+    file.createNewFile();
+    return file;
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) delete(f);
+    }
+    file.delete();
+  }
+
+}
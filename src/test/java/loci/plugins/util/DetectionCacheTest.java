@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.plugins.util;
+
+import ij.Prefs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.in.FakeReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the persistence and the fallback behavior of {@link DetectionCache}.
+ */
+public class DetectionCacheTest {
+
+  // -- Constants --
+
+  private static final String FAKE_ENABLED =
+    LociPrefs.PREF_READER_ENABLED + ".Fake";
+
+  // -- Fields --
+
+  private File dir;
+
+  // -- DetectionCacheTest methods --
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    DetectionCache.clear();
+    dir = Files.createTempDirectory("detect").toFile();
+    for (String name : new String[] {"a.fake", "b.fake", "c.nope"}) {
+      new File(dir, name).createNewFile();
+    }
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    DetectionCache.clear();
+    Prefs.set(FAKE_ENABLED, true);
+    LociPrefs.resetReaderConfig();
+    for (File file : dir.listFiles()) file.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testPersistence() {
+    DetectionCache.record(path("a.fake"), FakeReader.class);
+    assertEquals(LociPrefs.getDetectionCacheEntries(),
+      dir.getAbsolutePath() + File.separator + "*.fake\t" +
+      FakeReader.class.getName());
+
+    // entries are read back from the preferences
+    DetectionCache.reload();
+    assertTrue(hasFakeReader(DetectionCache.getCachedReader(path("b.fake"))));
+    assertEquals(DetectionCache.getHitCount(), 1);
+    assertEquals(DetectionCache.getMissCount(), 0);
+  }
+
+  @Test
+  public void testCounters() {
+    assertNull(DetectionCache.getCachedReader(path("a.fake")));
+    assertEquals(DetectionCache.getHitCount(), 0);
+    assertEquals(DetectionCache.getMissCount(), 1);
+
+    DetectionCache.record(path("a.fake"), FakeReader.class);
+    assertNotNull(DetectionCache.getCachedReader(path("a.fake")));
+    assertNotNull(DetectionCache.getCachedReader(path("b.fake")));
+    assertEquals(DetectionCache.getHitCount(), 2);
+    assertEquals(DetectionCache.getMissCount(), 1);
+
+    DetectionCache.clear();
+    assertEquals(DetectionCache.getHitCount(), 0);
+    assertEquals(DetectionCache.getMissCount(), 0);
+    assertEquals(LociPrefs.getDetectionCacheEntries(), "");
+  }
+
+  @Test
+  public void testFallback() {
+    // the remembered reader does not recognize the file
+    DetectionCache.record(path("c.nope"), FakeReader.class);
+    assertNull(DetectionCache.getCachedReader(path("c.nope")));
+    assertEquals(DetectionCache.getMissCount(), 1);
+
+    // the remembered reader is no longer enabled
+    DetectionCache.record(path("a.fake"), FakeReader.class);
+    Prefs.set(FAKE_ENABLED, false);
+    LociPrefs.resetReaderConfig();
+    assertNull(DetectionCache.getCachedReader(path("b.fake")));
+    assertEquals(DetectionCache.getMissCount(), 2);
+
+    // the remembered reader no longer exists
+    LociPrefs.setDetectionCacheEntries(dir.getAbsolutePath() +
+      File.separator + "*.fake\tloci.formats.in.MissingReader");
+    DetectionCache.reload();
+    assertNull(DetectionCache.getCachedReader(path("b.fake")));
+    assertEquals(DetectionCache.getMissCount(), 3);
+    assertEquals(DetectionCache.getHitCount(), 0);
+  }
+
+  // -- Helper methods --
+
+  private String path(String name) {
+    return new File(dir, name).getAbsolutePath();
+  }
+
+  private boolean hasFakeReader(ImageReader reader) {
+    assertNotNull(reader);
+    for (IFormatReader r : reader.getReaders()) {
+      if (r instanceof FakeReader) return true;
+    }
+    return false;
+  }
+
+}
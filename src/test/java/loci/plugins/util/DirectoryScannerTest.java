@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.plugins.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the grouping of files and the reuse of the scan index in
+ * {@link DirectoryScanner}.
+ */
+public class DirectoryScannerTest {
+
+  // -- Fields --
+
+  private File dir;
+
+  // -- DirectoryScannerTest methods --
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    dir = Files.createTempDirectory("scan").toFile();
+    for (String name : new String[] {"a1.fake", "a2.fake", "b.fake",
+      "notes.nope"})
+    {
+      createFile(name);
+    }
+    new File(dir, "c1.fake").mkdir();
+  }
+
+  @AfterMethod
+  public void deleteDirectory() {
+    File index = new DirectoryScanner(dir).getIndexFile();
+    if (index != null) index.delete();
+    for (File file : dir.listFiles()) file.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testGroupKey() {
+    assertEquals(DirectoryScanner.getGroupKey("img_001_c2.tif"),
+      "img_#_c#.tif");
+    assertEquals(DirectoryScanner.getGroupKey("img_002_c10.tif"),
+      "img_#_c#.tif");
+    assertEquals(DirectoryScanner.getGroupKey("12"), "#");
+    assertEquals(DirectoryScanner.getGroupKey("plain.tif"), "plain.tif");
+    assertEquals(DirectoryScanner.getGroupKey(""), "");
+  }
+
+  @Test
+  public void testScan() throws IOException {
+    DirectoryScanner scanner = new DirectoryScanner(dir);
+    scanner.setQuiet(true);
+    // the directory and the unknown extension are not examined
+    assertEquals(scanner.scan(), paths("a1.fake", "b.fake"));
+    assertEquals(scanner.getExaminedCount(), 3);
+  }
+
+  @Test
+  public void testIndexReuse() throws IOException {
+    DirectoryScanner scanner = new DirectoryScanner(dir);
+    scanner.setQuiet(true);
+    List<String> groups = scanner.scan();
+
+    scanner = new DirectoryScanner(dir);
+    scanner.setQuiet(true);
+    assertEquals(scanner.scan(), groups);
+    assertEquals(scanner.getExaminedCount(), 0);
+
+    // a modified file is examined again, even if the directory is not
+    File file = new File(dir, "a2.fake");
+    file.setLastModified(file.lastModified() - 10000);
+    assertEquals(scanner.scan(), groups);
+    assertEquals(scanner.getExaminedCount(), 1);
+    assertEquals(scanner.scan(), groups);
+    assertEquals(scanner.getExaminedCount(), 0);
+
+    // as is a new file
+    createFile("d.fake");
+    assertEquals(scanner.scan(), paths("a1.fake", "b.fake", "d.fake"));
+    assertEquals(scanner.getExaminedCount(), 1);
+  }
+
+  // -- Helper methods --
+
+  private void createFile(String name) throws IOException {
+    new File(dir, name).createNewFile();
+  }
+
+  private List<String> paths(String... names) {
+    String[] paths = new String[names.length];
+    for (int i=0; i<names.length; i++) {
+      paths[i] = new File(dir, names[i]).getAbsolutePath();
+    }
+    return Arrays.asList(paths);
+  }
+
+}
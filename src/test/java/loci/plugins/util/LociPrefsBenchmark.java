@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import java.io.IOException;
+
+import loci.formats.FormatException;
+import loci.formats.ImageReader;
+
+/**
+ * Measures the latency of opening a tiny file through
+ * {@link LociPrefs#makeImageReader()}, with and without the cached reader
+ * configuration. Not part of the unit test suite; run it directly.
+ */
+public class LociPrefsBenchmark {
+
+  // -- Constants --
+
+  private static final String TINY_FILE = "tiny&sizeX=4&sizeY=4.fake";
+
+  private static final int ITERATIONS = 100;
+
+  // -- Main method --
+
+  public static void main(String[] args) throws FormatException, IOException {
+    // warm up class loading and static initialization
+    openTiny();
+
+    long start = System.nanoTime();
+    for (int i=0; i<ITERATIONS; i++) {
+      LociPrefs.resetReaderConfig();
+      openTiny();
+    }
+    long uncached = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i=0; i<ITERATIONS; i++) {
+      openTiny();
+    }
+    long cached = System.nanoTime() - start;
+
+    System.out.println("Mean open latency: " +
+      uncached / ITERATIONS / 1000 + " us uncached, " +
+      cached / ITERATIONS / 1000 + " us cached");
+  }
+
+  // -- Helper methods --
+
+  private static void openTiny() throws FormatException, IOException {
+    try (ImageReader reader = LociPrefs.makeImageReader()) {
+      reader.setId(TINY_FILE);
+      reader.openBytes(0);
+    }
+  }
+
+}
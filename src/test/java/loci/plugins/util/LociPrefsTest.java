@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.Prefs;
+
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.in.FakeReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the caching of reader configuration in {@link LociPrefs}.
+ *
+ * @see LociPrefsBenchmark
+ */
+public class LociPrefsTest {
+
+  // -- Constants --
+
+  private static final String FAKE_ENABLED =
+    LociPrefs.PREF_READER_ENABLED + ".Fake";
+
+  // -- LociPrefsTest methods --
+
+  @AfterMethod
+  public void restorePrefs() {
+    Prefs.set(FAKE_ENABLED, true);
+    LociPrefs.resetReaderConfig();
+  }
+
+  @Test
+  public void testCachedConfig() {
+    LociPrefs.ReaderConfig config = LociPrefs.getReaderConfig();
+    assertSame(LociPrefs.getReaderConfig(), config);
+    LociPrefs.makeImageReader();
+    assertSame(LociPrefs.getReaderConfig(), config);
+
+    LociPrefs.resetReaderConfig();
+    assertNotSame(LociPrefs.getReaderConfig(), config);
+  }
+
+  @Test
+  public void testReadersNotShared() {
+    ImageReader first = LociPrefs.makeImageReader();
+    for (int i=0; i<3; i++) {
+      ImageReader next = LociPrefs.makeImageReader();
+      assertNotSame(next, first);
+      assertNotSame(next.getReaders()[0], first.getReaders()[0]);
+      assertEquals(next.getReaders().length, first.getReaders().length);
+      assertTrue(hasFakeReader(next));
+      first = next;
+    }
+  }
+
+  @Test
+  public void testResetConfig() {
+    LociPrefs.makeImageReader();
+    Prefs.set(FAKE_ENABLED, false);
+    // cached configuration still includes the reader until reset
+    assertTrue(hasFakeReader(LociPrefs.makeImageReader()));
+    LociPrefs.resetReaderConfig();
+    assertFalse(hasFakeReader(LociPrefs.makeImageReader()));
+    assertFalse(hasFakeReader(LociPrefs.makeImageReader()));
+
+    Prefs.set(FAKE_ENABLED, true);
+    LociPrefs.resetReaderConfig();
+    assertTrue(hasFakeReader(LociPrefs.makeImageReader()));
+  }
+
+  // -- Helper methods --
+
+  private boolean hasFakeReader(ImageReader reader) {
+    for (IFormatReader r : reader.getReaders()) {
+      if (r instanceof FakeReader) return true;
+    }
+    return false;
+  }
+
+}
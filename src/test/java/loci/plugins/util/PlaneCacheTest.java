@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.Prefs;
+import ij.process.ImageProcessor;
+
+import java.io.IOException;
+
+import loci.formats.FormatException;
+import loci.formats.in.FakeReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the sharing, eviction and release of planes in {@link PlaneCache}.
+ */
+public class PlaneCacheTest {
+
+  // -- Constants --
+
+  /** Bytes in one 512x512 8-bit plane. */
+  private static final int PLANE_BYTES = 512 * 512;
+
+  // -- Fields --
+
+  private String id;
+
+  /** References registered by the current test. */
+  private int references;
+
+  // -- PlaneCacheTest methods --
+
+  @AfterMethod
+  public void cleanUp() {
+    for (; references > 0; references--) PlaneCache.release(id);
+    PlaneCache.clear();
+    Prefs.set(LociPrefs.PREF_PLANE_CACHE_SIZE, 512);
+  }
+
+  @Test
+  public void testSharedPlanes() throws FormatException, IOException {
+    CountingReader first = open("shared");
+    CountingReader second = open("shared");
+    retain();
+    retain();
+
+    ImageProcessor a = openProcessor(first, 1);
+    assertEquals(first.reads, 1);
+    assertEquals(PlaneCache.getSize(), PLANE_BYTES);
+
+    // the second reader of the same dataset is served from the cache
+    ImageProcessor b = openProcessor(second, 1);
+    assertEquals(second.reads, 0);
+    assertEquals(PlaneCache.getSize(), PLANE_BYTES);
+
+    // each caller gets its own copy
+    assertNotSame(a, b);
+    assertEquals(a.getPixelValue(100, 100), b.getPixelValue(100, 100), 0);
+    a.set(100, 100, 0);
+    b.set(100, 100, 200);
+    assertEquals(openProcessor(second, 1).getPixelValue(100, 100), 100, 0);
+    assertEquals(second.reads, 0);
+  }
+
+  @Test
+  public void testEviction() throws FormatException, IOException {
+    Prefs.set(LociPrefs.PREF_PLANE_CACHE_SIZE, 1);
+    CountingReader r = open("eviction");
+    retain();
+
+    // four planes fill the 1 MB budget
+    for (int no=0; no<4; no++) openProcessor(r, no);
+    assertEquals(r.reads, 4);
+    assertEquals(PlaneCache.getSize(), 4 * PLANE_BYTES);
+
+    // plane 0 was used most recently, so plane 1 is evicted for plane 4
+    openProcessor(r, 0);
+    openProcessor(r, 4);
+    assertEquals(r.reads, 5);
+    assertEquals(PlaneCache.getSize(), 4 * PLANE_BYTES);
+    openProcessor(r, 0);
+    assertEquals(r.reads, 5);
+    openProcessor(r, 1);
+    assertEquals(r.reads, 6);
+    assertTrue(PlaneCache.getSize() <= 4 * PLANE_BYTES);
+  }
+
+  @Test
+  public void testReleaseStacks() throws Exception {
+    CountingReader r = open("release");
+    BFVirtualStack a = new BFVirtualStack(id, r, false, false, false);
+    BFVirtualStack b = new BFVirtualStack(id, r, false, false, false);
+
+    assertEquals(a.getProcessor(1).getPixelValue(100, 100), 100, 0);
+    assertTrue(PlaneCache.getSize() >= PLANE_BYTES);
+    assertEquals(b.getProcessor(1).getPixelValue(100, 100), 100, 0);
+
+    // the planes are kept while the other stack still refers to them
+    a.close();
+    a.close();
+    assertTrue(PlaneCache.getSize() >= PLANE_BYTES);
+
+    // and discarded with the last reference
+    b.close();
+    assertEquals(PlaneCache.getSize(), 0);
+    openProcessor(new ImageProcessorReader(r), 1);
+    assertEquals(PlaneCache.getSize(), 0);
+  }
+
+  // -- Helper methods --
+
+  private CountingReader open(String name) throws FormatException, IOException
+  {
+    id = name + "&pixelType=uint8&sizeX=512&sizeY=512&sizeZ=6.fake";
+    CountingReader r = new CountingReader();
+    r.setId(id);
+    return r;
+  }
+
+  private void retain() {
+    PlaneCache.retain(id);
+    references++;
+  }
+
+  private ImageProcessor openProcessor(CountingReader r, int no)
+    throws FormatException, IOException
+  {
+    return openProcessor(new ImageProcessorReader(r), no);
+  }
+
+  private ImageProcessor openProcessor(ImageProcessorReader r, int no)
+    throws FormatException, IOException
+  {
+    return PlaneCache.openProcessor(r, no);
+  }
+
+  // -- Helper classes --
+
+  /** Fake reader which counts the planes it decodes. */
+  private static class CountingReader extends FakeReader {
+    private int reads;
+
+    @Override
+    public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
+      throws FormatException, IOException
+    {
+      reads++;
+      return super.openBytes(no, buf, x, y, w, h);
+    }
+  }
+
+}
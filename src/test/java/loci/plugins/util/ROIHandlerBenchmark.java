@@ -0,0 +1,60 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+/**
+ * Measures the speed of encoding and decoding large ROI point lists in
+ * {@link ROIHandler}. Not part of the unit test suite; run it directly.
+ */
+public class ROIHandlerBenchmark {
+
+  // -- Constants --
+
+  private static final int[] VERTEX_COUNTS = {10000, 100000, 1000000};
+
+  // -- Main method --
+
+  public static void main(String[] args) {
+    for (int n : VERTEX_COUNTS) {
+      int[][] points = ROIHandlerTest.randomPoints(n);
+
+      long start = System.nanoTime();
+      String encoded = ROIHandler.encodePoints(points[0], points[1], n);
+      long encode = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int[][] decoded = ROIHandler.parsePoints(encoded);
+      long decode = System.nanoTime() - start;
+
+      System.out.println(n + " vertices: encoded in " + encode / 1000000 +
+        " ms, decoded in " + decode / 1000000 + " ms (" +
+        decoded[0].length + " decoded)");
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2006 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the encoding and decoding of ROI point lists in
+ * {@link ROIHandler}.
+ *
+ * @see ROIHandlerBenchmark
+ */
+public class ROIHandlerTest {
+
+  // -- ROIHandlerTest methods --
+
+  @Test
+  public void testRoundTrip() {
+    int[][] points = randomPoints(1000);
+    String encoded = ROIHandler.encodePoints(points[0], points[1], 1000);
+    int[][] decoded = ROIHandler.parsePoints(encoded);
+    assertEquals(decoded[0], points[0]);
+    assertEquals(decoded[1], points[1]);
+  }
+
+  @Test
+  public void testEncode() {
+    int[] x = {1, -20, 300};
+    int[] y = {4, 50, -600};
+    assertEquals(ROIHandler.encodePoints(x, y, 3), "1,4 -20,50 300,-600");
+    // only the first n coordinates are encoded
+    assertEquals(ROIHandler.encodePoints(x, y, 2), "1,4 -20,50");
+  }
+
+  @Test
+  public void testParseDecimals() {
+    int[][] points =
+      ROIHandler.parsePoints(" 1.5,2.75  -3.9,+4 5e1,6E0 1234567890,-.5 ");
+    assertEquals(points[0], new int[] {1, -3, 50, 1234567890});
+    assertEquals(points[1], new int[] {2, 4, 6, 0});
+  }
+
+  // -- Helper methods --
+
+  /** Generates n random vertices, reproducibly. */
+  static int[][] randomPoints(int n) {
+    Random random = new Random(n);
+    int[][] points = new int[2][n];
+    for (int i=0; i<n; i++) {
+      points[0][i] = random.nextInt(20000) - 10000;
+      points[1][i] = random.nextInt(20000) - 10000;
+    }
+    return points;
+  }
+
+}
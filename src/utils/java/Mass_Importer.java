@@ -31,11 +31,9 @@ import ij.io.DirectoryChooser;
 import ij.plugin.PlugIn;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import loci.formats.FilePattern;
-import loci.formats.ImageReader;
+import java.util.List;
 import loci.plugins.LociImporter;
+import loci.plugins.util.DirectoryScanner;
 
 /**
  * Processes all image files in the chosen directory,
@@ -50,41 +48,16 @@ public class Mass_Importer implements PlugIn {
     DirectoryChooser dc = new DirectoryChooser("Bio-Formats Mass Importer");
     String dirPath = dc.getDirectory();
 
-    // create a list of files we have already processed
-    HashSet<String> done = new HashSet<String>();
-
-    // list of files to actually open with Bio-Formats Importer
-    ArrayList<String> filesToOpen = new ArrayList<String>();
-
-    // process all files in the chosen directory
-    File dir = new File(dirPath);
-    File[] files = dir.listFiles();
+    // find the groups of supported files in the chosen directory
     IJ.showStatus("Scanning directory");
-    
-    // image reader object, for testing whether a file is in a supported format
-    try (ImageReader tester = new ImageReader()) {
-      for (int i=0; i<files.length; i++) {
-        String id = files[i].getAbsolutePath();
-        IJ.showProgress((double) i / files.length);
-  
-        // skip files that have already been processed
-        if (done.contains(id)) continue;
-  
-        // skip unsupported files
-        if (!tester.isThisType(id, false)) continue;
-  
-        // use FilePattern to group files with similar names
-        String name = files[i].getName();
-        FilePattern fp = new FilePattern(name, dirPath);
-  
-        // get a list of all files part of this group, and mark them as done
-        String[] used = fp.getFiles();
-        for (int j=0; j<used.length; j++) done.add(used[j]);
-  
-        filesToOpen.add(id);
-      }
-    } catch (IOException e) {
-      IJ.error("Sorry, an error while closing ImageReader: " + e.getMessage());
+    List<String> filesToOpen;
+    try {
+      filesToOpen = new DirectoryScanner(new File(dirPath)).scan();
+    }
+    catch (IOException e) {
+      IJ.error("Sorry, an error occurred while scanning the directory: " +
+        e.getMessage());
+      return;
     }
     IJ.showProgress(1.0);
     IJ.showStatus("");
@@ -104,7 +77,7 @@ public class Mass_Importer implements PlugIn {
 
     // launch the Bio-Formats Importer plugin to open each group of files
     for (int i=0; i<numToOpen; i++) {
-      String id = (String) filesToOpen.get(i);
+      String id = filesToOpen.get(i);
       String params =
         "location=[Local machine] " +
         "windowless=true " +